@@ -3,9 +3,12 @@ package com.hermnet.api.config;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
+import com.google.firebase.messaging.FirebaseMessaging;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
@@ -21,8 +24,12 @@ import java.nio.charset.StandardCharsets;
  * 1. JSON content from environment variables.
  * 2. File path from configuration.
  * 3. Application Default Credentials (ADC).
+ *
+ * Only active with the FCM push gateway ({@code app.push.gateway=fcm}, the
+ * default) so offline gateways never touch real credentials.
  */
 @Configuration
+@ConditionalOnProperty(name = "app.push.gateway", havingValue = "fcm", matchIfMissing = true)
 public class FirebaseConfig {
 
     @Value("${firebase.service.account.path:}")
@@ -31,13 +38,21 @@ public class FirebaseConfig {
     @Value("${firebase.service.account.json:}")
     private String serviceAccountJson;
 
+    @Value("${firebase.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMillis;
+
+    @Value("${firebase.http.read-timeout-ms:10000}")
+    private int readTimeoutMillis;
+
     /**
-     * Initializes the FirebaseApp bean.
+     * Initializes the FirebaseApp bean. Lazy, like {@link #firebaseMessaging},
+     * so nothing reads the credentials at startup.
      * 
      * @return The initialized FirebaseApp instance.
      * @throws IOException If there is an error reading the credentials.
      */
     @Bean
+    @Lazy
     public FirebaseApp firebaseApp() throws IOException {
         if (FirebaseApp.getApps().isEmpty()) {
             GoogleCredentials credentials;
@@ -53,10 +68,26 @@ public class FirebaseConfig {
 
             FirebaseOptions options = FirebaseOptions.builder()
                     .setCredentials(credentials)
+                    .setConnectTimeout(connectTimeoutMillis)
+                    .setReadTimeout(readTimeoutMillis)
                     .build();
 
             return FirebaseApp.initializeApp(options);
         }
         return FirebaseApp.getInstance();
     }
+
+    /**
+     * Messaging client used by the push dispatcher. Lazy, and so is the
+     * {@link FirebaseApp} it needs, so the credentials are only resolved once
+     * the first push actually has to go out.
+     *
+     * @param firebaseApp The initialized FirebaseApp.
+     * @return The FCM client bound to that app.
+     */
+    @Bean
+    @Lazy
+    public FirebaseMessaging firebaseMessaging(FirebaseApp firebaseApp) {
+        return FirebaseMessaging.getInstance(firebaseApp);
+    }
 }
@@ -0,0 +1,27 @@
+package com.hermnet.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hermnet.api.model.Snowflake;
+
+/**
+ * Configures the node id of the mailbox id generator.
+ *
+ * Every API instance writing to the same database must run with a distinct
+ * {@code app.ids.node-id} (0-1023), otherwise two nodes can hand out the same
+ * id in the same millisecond.
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    @Bean
+    public Snowflake snowflake(@Value("${app.ids.node-id:0}") long nodeId) {
+        // Keep the running generator (and its sequence state) when the node is unchanged.
+        if (Snowflake.shared().nodeId() != nodeId) {
+            Snowflake.configureShared(new Snowflake(nodeId));
+        }
+        return Snowflake.shared();
+    }
+}
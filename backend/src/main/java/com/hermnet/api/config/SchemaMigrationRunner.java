@@ -1,33 +1,102 @@
 package com.hermnet.api.config;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import com.hermnet.api.service.LargeObjectReclaimer;
+import com.hermnet.api.service.MailboxPartitionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
 
 /**
  * One-shot schema migrations that Hibernate's {@code ddl-auto=update} cannot perform
  * on its own (renames in particular). Each step is idempotent — repeated runs are no-ops
- * once the migration has already been applied.
+ * once the migration has already been applied — and runs in its own transaction, so a
+ * failed step is rolled back and logged without undoing or skipping the others.
  *
- * Current migrations:
+ * Current migrations, on every boot:
  *  - mailbox.stego_packet → mailbox.payload (the column was renamed when the
  *    steganography layer was removed in favour of pure hybrid encryption).
+ *  - Drop idx_mailbox_recipient, superseded by the composite
+ *    (recipient_hash, message_id) index that serves cursor-based sync.
+ *
+ * Offline migrations, only with {@code app.schema.offline-migration.enabled=true}
+ * (PostgreSQL only). Both rewrite or rename the whole table under an ACCESS EXCLUSIVE
+ * lock, so they are run once, on a single instance, with traffic stopped:
+ *  - mailbox.payload oid → bytea with STORAGE EXTERNAL, then unlink the large
+ *    objects left behind.
+ *  - mailbox → range-partitioned by created_at, see {@link MailboxPartitionManager}.
+ * Without the flag a pending offline migration is only reported in the log.
  */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class SchemaMigrationRunner {
 
+    private static final String PAYLOAD_TYPE_SQL = "SELECT data_type FROM information_schema.columns "
+            + "WHERE table_name = 'mailbox' AND column_name = 'payload'";
+
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate stepTransaction;
+    private final LargeObjectReclaimer largeObjectReclaimer;
+    private final MailboxPartitionManager mailboxPartitionManager;
+    private final boolean offlineMigrationEnabled;
+
+    public SchemaMigrationRunner(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            LargeObjectReclaimer largeObjectReclaimer, MailboxPartitionManager mailboxPartitionManager,
+            @Value("${app.schema.offline-migration.enabled:false}") boolean offlineMigrationEnabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stepTransaction = new TransactionTemplate(transactionManager);
+        this.largeObjectReclaimer = largeObjectReclaimer;
+        this.mailboxPartitionManager = mailboxPartitionManager;
+        this.offlineMigrationEnabled = offlineMigrationEnabled;
+    }
 
     @EventListener(ApplicationReadyEvent.class)
-    @Transactional
     public void run() {
-        renameStegoPacketToPayload();
+        step("stego_packet -> payload", this::renameStegoPacketToPayload);
+        step("drop idx_mailbox_recipient", this::dropSupersededRecipientIndex);
+
+        if (!offlineMigrationEnabled) {
+            reportPendingOfflineMigrations();
+            return;
+        }
+        // Committed before the reclaimer looks at the column type.
+        step("payload oid -> bytea", this::convertPayloadToBytea);
+        step("reclaim payload large objects", largeObjectReclaimer::reclaimOrphans);
+        step("partition mailbox", mailboxPartitionManager::partitionTable);
+    }
+
+    private void step(String name, Runnable migration) {
+        try {
+            stepTransaction.executeWithoutResult(status -> migration.run());
+        } catch (Exception e) {
+            log.warn("Schema migration ({}) skipped: {}", name, e.getMessage());
+        }
+    }
+
+    private void reportPendingOfflineMigrations() {
+        try {
+            if ("oid".equalsIgnoreCase(payloadType())) {
+                log.error("mailbox.payload is still an oid column; run the offline migration "
+                        + "(app.schema.offline-migration.enabled=true) before serving traffic");
+            }
+            if (mailboxPartitionManager.isPlainTable()) {
+                log.info("mailbox is not partitioned yet; the offline migration "
+                        + "(app.schema.offline-migration.enabled=true) converts it");
+            }
+        } catch (Exception e) {
+            log.debug("Could not check for pending offline migrations: {}", e.getMessage());
+        }
+    }
+
+    private String payloadType() {
+        List<String> type = jdbcTemplate.queryForList(PAYLOAD_TYPE_SQL, String.class);
+        return type.isEmpty() ? "" : type.get(0);
     }
 
     /**
@@ -40,34 +109,62 @@ public class SchemaMigrationRunner {
      * any messages stored in older deployments.
      */
     private void renameStegoPacketToPayload() {
-        try {
-            Boolean hasOldColumn = jdbcTemplate.queryForObject(
-                    "SELECT EXISTS (SELECT 1 FROM information_schema.columns " +
-                            "WHERE table_name = 'mailbox' AND column_name = 'stego_packet')",
-                    Boolean.class
-            );
-            if (Boolean.FALSE.equals(hasOldColumn)) {
-                return; // already migrated or fresh DB
-            }
+        Boolean hasOldColumn = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM information_schema.columns " +
+                        "WHERE table_name = 'mailbox' AND column_name = 'stego_packet')",
+                Boolean.class
+        );
+        if (Boolean.FALSE.equals(hasOldColumn)) {
+            return; // already migrated or fresh DB
+        }
+
+        Boolean hasNewColumn = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM information_schema.columns " +
+                        "WHERE table_name = 'mailbox' AND column_name = 'payload')",
+                Boolean.class
+        );
 
-            Boolean hasNewColumn = jdbcTemplate.queryForObject(
-                    "SELECT EXISTS (SELECT 1 FROM information_schema.columns " +
-                            "WHERE table_name = 'mailbox' AND column_name = 'payload')",
-                    Boolean.class
+        if (Boolean.TRUE.equals(hasNewColumn)) {
+            int copied = jdbcTemplate.update(
+                    "UPDATE mailbox SET payload = stego_packet WHERE payload IS NULL"
             );
+            log.info("Migrated {} mailbox rows from stego_packet to payload", copied);
+            jdbcTemplate.execute("ALTER TABLE mailbox DROP COLUMN stego_packet");
+        } else {
+            jdbcTemplate.execute("ALTER TABLE mailbox RENAME COLUMN stego_packet TO payload");
+            log.info("Renamed mailbox.stego_packet -> mailbox.payload");
+        }
+    }
 
-            if (Boolean.TRUE.equals(hasNewColumn)) {
-                int copied = jdbcTemplate.update(
-                        "UPDATE mailbox SET payload = stego_packet WHERE payload IS NULL"
-                );
-                log.info("Migrated {} mailbox rows from stego_packet to payload", copied);
-                jdbcTemplate.execute("ALTER TABLE mailbox DROP COLUMN stego_packet");
-            } else {
-                jdbcTemplate.execute("ALTER TABLE mailbox RENAME COLUMN stego_packet TO payload");
-                log.info("Renamed mailbox.stego_packet -> mailbox.payload");
-            }
-        } catch (Exception e) {
-            log.warn("Schema migration (stego_packet -> payload) skipped: {}", e.getMessage());
+    /**
+     * {@code idx_mailbox_recipient} only covered {@code recipient_hash}; every
+     * query it served is answered by the composite
+     * {@code idx_mailbox_recipient_message}, which ddl-auto=update creates.
+     * Keeping both would only slow down inserts.
+     */
+    private void dropSupersededRecipientIndex() {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_mailbox_recipient");
+    }
+
+    /**
+     * The payload used to be {@code @Lob}, which PostgreSQL stores as an
+     * {@code oid} pointing into {@code pg_largeobject}: extra round trips per
+     * read, and bulk deletes never unlinked the objects. The column is
+     * rewritten in place as {@code bytea} (ddl-auto=update never changes a
+     * column type); the now unreferenced large objects are unlinked by the
+     * next step, once this one has committed.
+     *
+     * {@code STORAGE EXTERNAL} keeps large values out of line but skips TOAST
+     * compression, which is wasted work on ciphertext.
+     */
+    private void convertPayloadToBytea() {
+        String type = payloadType();
+        if ("oid".equalsIgnoreCase(type)) {
+            jdbcTemplate.execute("ALTER TABLE mailbox ALTER COLUMN payload TYPE bytea USING lo_get(payload)");
+            log.info("Converted mailbox.payload from oid to bytea");
+        } else if (!"bytea".equalsIgnoreCase(type)) {
+            return; // no such column, or not PostgreSQL
         }
+        jdbcTemplate.execute("ALTER TABLE mailbox ALTER COLUMN payload SET STORAGE EXTERNAL");
     }
 }
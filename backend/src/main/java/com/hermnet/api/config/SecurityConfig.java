@@ -3,6 +3,8 @@ package com.hermnet.api.config;
 import java.util.Arrays;
 import java.util.List;
 
+import jakarta.servlet.DispatcherType;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -44,7 +46,11 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        // Async re-dispatches (long-poll completion) were authorized on the original request.
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                         .requestMatchers("/api/auth/**").permitAll()
+                        // WebSocket upgrades are authenticated by JwtHandshakeInterceptor.
+                        .requestMatchers("/api/ws/**").permitAll()
                         .requestMatchers("/api/messages/**").authenticated()
                         .anyRequest().authenticated())
                 .addFilterBefore(ipAnonymizationFilter, UsernamePasswordAuthenticationFilter.class)
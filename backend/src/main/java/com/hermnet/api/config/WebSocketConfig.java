@@ -0,0 +1,40 @@
+package com.hermnet.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import com.hermnet.api.controller.MailboxWebSocketHandler;
+import com.hermnet.api.security.JwtHandshakeInterceptor;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Registers the mailbox WebSocket endpoint.
+ *
+ * The upgrade request is authenticated by {@link JwtHandshakeInterceptor}
+ * rather than the servlet security chain, and accepts the same origins as the
+ * REST CORS policy.
+ */
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final MailboxWebSocketHandler mailboxWebSocketHandler;
+    private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
+
+    @Value("${app.cors.allowed-origins:}")
+    private String allowedOrigins;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        var registration = registry.addHandler(mailboxWebSocketHandler, "/api/ws/mailbox")
+                .addInterceptors(jwtHandshakeInterceptor);
+        if (allowedOrigins != null && !allowedOrigins.isBlank()) {
+            registration.setAllowedOrigins(allowedOrigins.split(","));
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.hermnet.api.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hermnet.api.dto.MailboxFrame;
+import com.hermnet.api.model.Message;
+import com.hermnet.api.model.Snowflake;
+import com.hermnet.api.security.JwtHandshakeInterceptor;
+import com.hermnet.api.security.JwtTokenProvider;
+import com.hermnet.api.service.MailboxService;
+import com.hermnet.api.service.MailboxWaitRegistry;
+import com.hermnet.api.service.TokenBlacklistService;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persistent mailbox channel at {@code /api/ws/mailbox}.
+ *
+ * Over one authenticated connection a client sends ciphertexts, receives new
+ * mailbox payloads as soon as they are stored and acknowledges them, without
+ * paying per-request authentication and rate-limit costs.
+ *
+ * Flow control is credit based: the server only pushes as many
+ * {@code message} frames as the client granted through {@code credit} frames
+ * (plus an initial allowance). Outbound frames go through a bounded buffer;
+ * a client that stops reading and overflows it is disconnected. The JWT used
+ * for the handshake is re-checked when it expires: unless the client sent a
+ * {@code reauth} frame with a fresh token, the connection is closed with
+ * status 4401. An {@code ack} frame removes only messages this connection
+ * delivered, never ones it skipped over. Like the cursor sync, delivery only
+ * moves past ids older than {@code app.mailbox.sync.commit-window-ms}: younger
+ * messages are pushed right away but remembered, so one whose transaction
+ * commits after a higher id was pushed is still delivered. {@code send} frames are limited to a budget per connection
+ * and window, the socket counterpart of the HTTP rate limit.
+ *
+ * Inbound frames are accepted in parts and joined here, so the container keeps
+ * its small default text buffer instead of reserving room for the largest
+ * {@code send} on every session; a frame longer than
+ * {@code app.ws.max-frame-chars} characters closes the connection with
+ * status 1009.
+ */
+@Component
+@Slf4j
+public class MailboxWebSocketHandler extends TextWebSocketHandler {
+
+    static final CloseStatus TOKEN_EXPIRED = new CloseStatus(4401, "Token expired");
+    private static final int PUMP_BATCH_SIZE = 100;
+    private static final Set<String> FRAME_TYPES = Set.of("send", "ack", "credit", "reauth");
+
+    private final MailboxService mailboxService;
+    private final MailboxWaitRegistry mailboxWaitRegistry;
+    private final JwtTokenProvider jwtTokenProvider;
+    private final TokenBlacklistService tokenBlacklistService;
+    private final TaskScheduler taskScheduler;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final int initialCredits;
+    private final int sendTimeLimitMillis;
+    private final int bufferSizeLimitBytes;
+    private final int maxSendsPerWindow;
+    private final long sendWindowNanos;
+    private final int maxFrameChars;
+    private final long commitWindowMillis;
+
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+
+    public MailboxWebSocketHandler(
+            MailboxService mailboxService,
+            MailboxWaitRegistry mailboxWaitRegistry,
+            JwtTokenProvider jwtTokenProvider,
+            TokenBlacklistService tokenBlacklistService,
+            TaskScheduler taskScheduler,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.ws.initial-credits:64}") int initialCredits,
+            @Value("${app.ws.send-time-limit-ms:10000}") int sendTimeLimitMillis,
+            @Value("${app.ws.buffer-size-limit-bytes:4194304}") int bufferSizeLimitBytes,
+            @Value("${app.ws.send-rate.max-per-window:120}") int maxSendsPerWindow,
+            @Value("${app.ws.send-rate.window-seconds:60}") long sendWindowSeconds,
+            @Value("${app.ws.max-frame-chars:23068672}") int maxFrameChars,
+            @Value("${app.mailbox.sync.commit-window-ms:2000}") long commitWindowMillis) {
+        this.mailboxService = mailboxService;
+        this.mailboxWaitRegistry = mailboxWaitRegistry;
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.tokenBlacklistService = tokenBlacklistService;
+        this.taskScheduler = taskScheduler;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.initialCredits = Math.max(initialCredits, 0);
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimitBytes = bufferSizeLimitBytes;
+        this.maxSendsPerWindow = maxSendsPerWindow > 0 ? maxSendsPerWindow : 120;
+        this.sendWindowNanos = Duration.ofSeconds(sendWindowSeconds > 0 ? sendWindowSeconds : 60).toNanos();
+        this.maxFrameChars = Math.max(maxFrameChars, 1);
+        this.commitWindowMillis = Math.max(commitWindowMillis, 0);
+        Gauge.builder("hermnet.ws.connections", connections, Map::size)
+                .description("Open mailbox WebSocket connections")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        String principal = (String) session.getAttributes().get(JwtHandshakeInterceptor.PRINCIPAL_ATTRIBUTE);
+        Connection connection = new Connection(principal,
+                new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMillis, bufferSizeLimitBytes,
+                        ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE),
+                initialCredits,
+                JwtHandshakeInterceptor.expiresAt(session.getAttributes()));
+        connections.put(session.getId(), connection);
+
+        connection.subscription = mailboxWaitRegistry.subscribe(principal, () -> pump(connection));
+        scheduleExpiryCheck(connection);
+        pump(connection);
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return true;
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        Connection connection = connections.get(session.getId());
+        if (connection == null) {
+            return;
+        }
+        StringBuilder parts = connection.partialFrame;
+        if ((long) parts.length() + message.getPayload().length() > maxFrameChars) {
+            parts.setLength(0);
+            closeTooBig(connection);
+            return;
+        }
+        if (!message.isLast()) {
+            parts.append(message.getPayload());
+            return;
+        }
+        String text = message.getPayload();
+        if (!parts.isEmpty()) {
+            text = parts.append(text).toString();
+            parts.setLength(0);
+        }
+
+        long start = System.nanoTime();
+        String type = "invalid";
+        MailboxFrame frame;
+        try {
+            frame = objectMapper.readValue(text, MailboxFrame.class);
+        } catch (IOException e) {
+            send(connection, MailboxFrame.error(null, "Malformed frame"));
+            recordLatency(type, start);
+            return;
+        }
+
+        if (frame.type() != null && FRAME_TYPES.contains(frame.type())) {
+            type = frame.type();
+        }
+        switch (type) {
+            case "send" -> handleSend(connection, frame);
+            case "ack" -> handleAck(connection, frame);
+            case "credit" -> handleCredit(connection, frame);
+            case "reauth" -> handleReauth(connection, frame);
+            default -> send(connection, MailboxFrame.error(frame.ref(), "Unknown frame type"));
+        }
+        recordLatency(type, start);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Connection connection = connections.remove(session.getId());
+        if (connection == null) {
+            return;
+        }
+        if (connection.subscription != null) {
+            connection.subscription.cancel();
+        }
+        if (connection.expiryCheck != null) {
+            connection.expiryCheck.cancel(false);
+        }
+    }
+
+    int openConnections() {
+        return connections.size();
+    }
+
+    private void handleSend(Connection connection, MailboxFrame frame) {
+        if (frame.recipientId() == null || frame.recipientId().isBlank()
+                || frame.payload() == null || frame.payload().length == 0) {
+            send(connection, MailboxFrame.error(frame.ref(), "recipientId and payload are required"));
+            return;
+        }
+        if (frame.ttlSeconds() != null && frame.ttlSeconds() <= 0) {
+            send(connection, MailboxFrame.error(frame.ref(), "ttlSeconds must be positive"));
+            return;
+        }
+        if (!connection.trySpendSend(System.nanoTime(), maxSendsPerWindow, sendWindowNanos)) {
+            send(connection, MailboxFrame.error(frame.ref(), "Too Many Requests"));
+            return;
+        }
+        mailboxService.send(frame.recipientId(), frame.payload(), frame.ttlSeconds());
+        send(connection, MailboxFrame.sent(frame.ref()));
+    }
+
+    private void handleAck(Connection connection, MailboxFrame frame) {
+        if (frame.upTo() == null) {
+            send(connection, MailboxFrame.error(frame.ref(), "upTo is required"));
+            return;
+        }
+        // Only what was pushed here: a lower id that committed after a higher
+        // one was delivered is still pending even though it is below upTo.
+        List<Long> acked;
+        connection.lock.lock();
+        try {
+            Set<Long> upTo = connection.unacked.headSet(frame.upTo(), true);
+            acked = new ArrayList<>(upTo);
+            upTo.clear();
+        } finally {
+            connection.lock.unlock();
+        }
+        long deleted = mailboxService.ackIds(connection.principal, acked).size();
+        send(connection, MailboxFrame.acked(frame.ref(), deleted));
+    }
+
+    private void handleCredit(Connection connection, MailboxFrame frame) {
+        if (frame.credits() == null || frame.credits() <= 0) {
+            send(connection, MailboxFrame.error(frame.ref(), "credits must be positive"));
+            return;
+        }
+        connection.lock.lock();
+        try {
+            connection.credits = (int) Math.min((long) connection.credits + frame.credits(), Integer.MAX_VALUE);
+        } finally {
+            connection.lock.unlock();
+        }
+        pump(connection);
+    }
+
+    private void handleReauth(Connection connection, MailboxFrame frame) {
+        try {
+            Claims claims = jwtTokenProvider.parseClaims(frame.token());
+            if (!connection.principal.equals(claims.getSubject())
+                    || tokenBlacklistService.isBlacklisted(claims.getId())
+                    || claims.getExpiration() == null) {
+                send(connection, MailboxFrame.error(frame.ref(), "Token rejected"));
+                return;
+            }
+            connection.expiresAt = claims.getExpiration().toInstant();
+            send(connection, MailboxFrame.reauthed(frame.ref()));
+        } catch (Exception e) {
+            send(connection, MailboxFrame.error(frame.ref(), "Token rejected"));
+        }
+    }
+
+    /**
+     * Pushes pending messages while the client has credit left. Serialized per
+     * connection so concurrent wake-ups never deliver the same message twice.
+     * The lock is held across queries and socket writes, so it is a
+     * {@link ReentrantLock} rather than a monitor: a virtual thread waiting on
+     * it unmounts instead of pinning its carrier.
+     *
+     * The connection's cursor only passes ids below the commit-safety
+     * horizon; ids above it that were already pushed are skipped on the next
+     * query, which is widened by their number so a full page of new messages
+     * still fits.
+     */
+    private void pump(Connection connection) {
+        connection.lock.lock();
+        try {
+            long horizon = commitWindowMillis > 0
+                    ? Snowflake.firstIdAt(System.currentTimeMillis() - commitWindowMillis)
+                    : Long.MAX_VALUE;
+            while (connection.session.isOpen() && connection.credits > 0) {
+                int wanted = Math.min(connection.credits, PUMP_BATCH_SIZE);
+                int limit = wanted + connection.deliveredAboveCursor.size();
+                List<Message> batch = mailboxService.fetchAfter(connection.principal, connection.cursor, limit);
+                for (Message message : batch) {
+                    long id = message.getMessageId();
+                    boolean delivered = connection.deliveredAboveCursor.contains(id);
+                    if (!delivered) {
+                        if (connection.credits == 0 || !send(connection, MailboxFrame.message(
+                                id, message.getCreatedAt(), message.getPayload()))) {
+                            return;
+                        }
+                        connection.unacked.add(id);
+                        connection.credits--;
+                    }
+                    if (id < horizon) {
+                        connection.cursor = id;
+                        connection.deliveredAboveCursor.remove(id);
+                    } else if (!delivered) {
+                        connection.deliveredAboveCursor.add(id);
+                    }
+                }
+                if (batch.size() < limit) {
+                    return;
+                }
+            }
+        } finally {
+            connection.lock.unlock();
+        }
+    }
+
+    private void scheduleExpiryCheck(Connection connection) {
+        connection.expiryCheck = taskScheduler.schedule(() -> checkExpiry(connection), connection.expiresAt);
+    }
+
+    void checkExpiry(Connection connection) {
+        if (connection.expiresAt.isAfter(Instant.now())) {
+            scheduleExpiryCheck(connection);
+            return;
+        }
+        try {
+            connection.session.close(TOKEN_EXPIRED);
+        } catch (IOException e) {
+            log.debug("Closing expired mailbox socket failed: {}", e.getMessage());
+        }
+    }
+
+    private void closeTooBig(Connection connection) {
+        try {
+            connection.session.close(CloseStatus.TOO_BIG_TO_PROCESS);
+        } catch (IOException e) {
+            log.debug("Closing mailbox socket with an oversized frame failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean send(Connection connection, MailboxFrame frame) {
+        try {
+            connection.session.sendMessage(new TextMessage(objectMapper.writeValueAsString(frame)));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Mailbox socket send failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void recordLatency(String type, long startNanos) {
+        Timer.builder("hermnet.ws.frame.latency")
+                .description("Time spent handling one inbound mailbox frame")
+                .tag("type", type)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    static final class Connection {
+
+        private final String principal;
+        private final WebSocketSession session;
+        /** Guards {@code credits}, {@code cursor}, {@code deliveredAboveCursor} and {@code unacked}. */
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Instant expiresAt;
+        private int credits;
+        /** Every id up to here was delivered; only advanced past ids older than the commit window. */
+        private long cursor;
+        /** Ids above {@code cursor} that were already delivered. */
+        private final TreeSet<Long> deliveredAboveCursor = new TreeSet<>();
+        /** Ids delivered and not yet acknowledged. */
+        private final TreeSet<Long> unacked = new TreeSet<>();
+        private long sendWindowStart;
+        private int sendsInWindow;
+        /** Parts of the inbound frame being received; touched by the inbound thread only. */
+        private final StringBuilder partialFrame = new StringBuilder();
+        private MailboxWaitRegistry.Subscription subscription;
+        private ScheduledFuture<?> expiryCheck;
+
+        private Connection(String principal, WebSocketSession session, int credits, Instant expiresAt) {
+            this.principal = principal;
+            this.session = session;
+            this.credits = credits;
+            this.expiresAt = expiresAt;
+            this.sendWindowStart = System.nanoTime();
+        }
+
+        /**
+         * Counts one {@code send} frame against the fixed-window budget. Only
+         * called for inbound frames, which the container delivers one at a
+         * time per session.
+         */
+        private boolean trySpendSend(long now, int maxPerWindow, long windowNanos) {
+            if (now - sendWindowStart >= windowNanos) {
+                sendWindowStart = now;
+                sendsInWindow = 0;
+            }
+            return ++sendsInWindow <= maxPerWindow;
+        }
+
+    }
+}
@@ -1,21 +1,36 @@
 package com.hermnet.api.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hermnet.api.dto.AckRequest;
 import com.hermnet.api.dto.AckResponse;
+import com.hermnet.api.dto.BatchSendRequest;
 import com.hermnet.api.dto.SendMessageRequest;
-import com.hermnet.api.model.Message;
-import com.hermnet.api.model.User;
-import com.hermnet.api.repository.MessageRepository;
-import com.hermnet.api.repository.UserRepository;
+import com.hermnet.api.model.Snowflake;
+import com.hermnet.api.service.BinaryMailboxPageWriter;
+import com.hermnet.api.service.JsonMailboxPageWriter;
+import com.hermnet.api.service.MailboxCursor;
+import com.hermnet.api.service.MailboxPageWriter;
+import com.hermnet.api.service.MailboxService;
+import com.hermnet.api.service.MailboxWaitRegistry;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
  * Controller for secure message exchange.
@@ -28,9 +43,30 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class MessageController {
 
-    private final MessageRepository messageRepository;
-    private final UserRepository userRepository;
-    private final com.hermnet.api.service.NotificationService notificationService;
+    private final MailboxService mailboxService;
+    private final MailboxWaitRegistry mailboxWaitRegistry;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.mailbox.long-poll.max-wait-seconds:30}")
+    private long maxWaitSeconds;
+
+    @Value("${app.mailbox.sync.max-messages:500}")
+    private int maxSyncMessages;
+
+    @Value("${app.mailbox.sync.max-bytes:8388608}")
+    private long maxSyncBytes;
+
+    @Value("${app.mailbox.sync.commit-window-ms:2000}")
+    private long syncCommitWindowMillis;
+
+    @Value("${app.mailbox.max-payload-bytes:16777216}")
+    private long maxPayloadBytes;
+
+    @Value("${app.mailbox.ack.max-ids:10000}")
+    private int maxAckIds;
+
+    @Value("${app.mailbox.batch.max-messages:500}")
+    private int maxBatchMessages;
 
     /**
      * Sends a secure message to a recipient.
@@ -44,17 +80,66 @@ public class MessageController {
      */
     @PostMapping
     public ResponseEntity<Void> sendMessage(@Valid @RequestBody SendMessageRequest request) {
-        Message message = Message.builder()
-                .recipientHash(request.recipientId())
-                .payload(request.payload())
-                .build();
+        mailboxService.send(request.recipientId(), request.payload(), request.ttlSeconds());
+        return ResponseEntity.accepted().build();
+    }
 
-        messageRepository.save(message);
+    /**
+     * Sends several secure messages in one request.
+     *
+     * Meant for group sends: the client encrypts once per member and posts
+     * every ciphertext together, so the filter chain, rate limit and
+     * recipient lookup run once and the rows are written with one JDBC batch.
+     *
+     * @param request Recipient/payload pairs, at most
+     *                {@code app.mailbox.batch.max-messages}.
+     * @return 202 Accepted once every message is stored; 400 if any entry is
+     *         invalid or the batch is too large.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<Void> sendMessages(@Valid @RequestBody BatchSendRequest request) {
+        if (request.messages().size() > maxBatchMessages) {
+            return ResponseEntity.badRequest().build();
+        }
+        mailboxService.sendBatch(request.messages());
+        return ResponseEntity.accepted().build();
+    }
 
-        userRepository.findById(request.recipientId())
-                .map(User::getPushToken)
-                .ifPresent(notificationService::sendSyncNotification);
+    /**
+     * Binary variant of {@link #sendMessage(SendMessageRequest)}.
+     *
+     * The request body is the raw ciphertext ({@code application/octet-stream}),
+     * read straight into a single array of the declared length instead of
+     * being Base64-decoded from JSON.
+     *
+     * @param recipientId The ID of the user to receive the message.
+     * @param ttlSeconds  Optional lifetime, see {@link SendMessageRequest#ttlSeconds()}.
+     * @param request     Request whose body is the encrypted payload.
+     * @return 202 Accepted; 400 for an empty or truncated body or a
+     *         non-positive TTL, 411 without
+     *         Content-Length, 413 above {@code app.mailbox.max-payload-bytes}.
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Void> sendRawMessage(
+            @RequestParam String recipientId,
+            @RequestParam(required = false) Integer ttlSeconds,
+            HttpServletRequest request) throws IOException {
+        long length = request.getContentLengthLong();
+        if (recipientId.isBlank() || length == 0 || (ttlSeconds != null && ttlSeconds <= 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (length < 0) {
+            return ResponseEntity.status(HttpStatus.LENGTH_REQUIRED).build();
+        }
+        if (length > maxPayloadBytes) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
 
+        byte[] payload = request.getInputStream().readNBytes((int) length);
+        if (payload.length != length) {
+            return ResponseEntity.badRequest().build();
+        }
+        mailboxService.send(recipientId, payload, ttlSeconds);
         return ResponseEntity.accepted().build();
     }
 
@@ -64,31 +149,223 @@ public class MessageController {
      * Returns a list of encrypted payloads intended for the user, ordered by
      * arrival time (newest first).
      *
-     * @param myId The user's ID hash to retrieve messages for.
+     * With the pending index enabled, a caller reading their own mailbox gets
+     * an ETag that changes whenever the mailbox does; a request whose
+     * {@code If-None-Match} still matches gets {@code 304 Not Modified}
+     * without any payload query. Other {@code myId} values never reach the
+     * index.
+     *
+     * @param myId        The user's ID hash to retrieve messages for.
+     * @param ifNoneMatch ETag(s) of the list the client already holds.
+     * @param principal   Authenticated user's ID hash.
      * @return List of encrypted payloads (as byte arrays / Base64 strings).
      */
     @GetMapping
     @Transactional(readOnly = true)
-    public ResponseEntity<List<byte[]>> getMessages(@RequestParam String myId) {
-        List<Message> messages = messageRepository.findByRecipientHashOrderByCreatedAtDesc(myId);
+    public ResponseEntity<List<byte[]>> getMessages(
+            @RequestParam String myId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @AuthenticationPrincipal String principal) {
+        if (!myId.equals(principal)) {
+            return ResponseEntity.ok(mailboxService.listPayloads(myId));
+        }
+        // Read before the payloads: a message stored in between only makes the next poll a 200 again.
+        String etag = mailboxService.mailboxETag(principal);
+        if (etag == null) {
+            return ResponseEntity.ok(mailboxService.listOwnPayloads(principal));
+        }
+        if (ifNoneMatch != null && matchesETag(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .body(mailboxService.listOwnPayloads(principal));
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Long-poll variant of {@link #getMessages(String, String, String)}.
+     *
+     * Answers immediately when the mailbox already holds messages. Otherwise the
+     * request is parked (no servlet thread held) until a message for
+     * {@code myId} is stored or {@code waitSeconds} elapse, in which case an
+     * empty list is returned.
+     *
+     * @param myId        The user's ID hash to retrieve messages for.
+     * @param waitSeconds Maximum time to hold the request, capped by
+     *                    {@code app.mailbox.long-poll.max-wait-seconds}.
+     * @return Deferred list of encrypted payloads, newest first.
+     */
+    @GetMapping(params = "waitSeconds")
+    public DeferredResult<ResponseEntity<List<byte[]>>> awaitMessages(
+            @RequestParam String myId,
+            @RequestParam long waitSeconds) {
+        long timeoutMillis = Math.max(0, Math.min(waitSeconds, maxWaitSeconds)) * 1000;
+        DeferredResult<ResponseEntity<List<byte[]>>> result =
+                new DeferredResult<>(timeoutMillis, ResponseEntity.ok(List.of()));
+
+        // Subscribe before the first read so a message stored in between still
+        // wakes this request.
+        MailboxWaitRegistry.Subscription subscription = mailboxWaitRegistry.subscribe(myId, () -> {
+            if (!result.isSetOrExpired()) {
+                result.setResult(ResponseEntity.ok(loadPayloads(myId)));
+            }
+        });
+        result.onCompletion(subscription::cancel);
 
-        List<byte[]> payloads = messages.stream()
-                .map(Message::getPayload)
-                .collect(Collectors.toList());
+        List<byte[]> payloads = loadPayloads(myId);
+        if (!payloads.isEmpty() || timeoutMillis == 0) {
+            result.setResult(ResponseEntity.ok(payloads));
+        }
+        return result;
+    }
+
+    private List<byte[]> loadPayloads(String recipientHash) {
+        return mailboxService.listPayloads(recipientHash);
+    }
+
+    /**
+     * Incremental, paginated mailbox sync for the authenticated user.
+     *
+     * Returns the messages that arrived after {@code cursor} in ascending id
+     * order, cut at {@code limit} messages or {@code maxBytes} of payload,
+     * whichever comes first. Both limits are capped server-side. The returned
+     * {@code nextCursor} continues from the last message of the page; the
+     * client keeps calling while {@code hasMore} is true.
+     *
+     * Messages younger than {@code app.mailbox.sync.commit-window-ms} are held
+     * back (and reported through {@code hasMore}), so no message whose
+     * transaction is still open can end up behind a cursor.
+     *
+     * The body is streamed from a database cursor as rows arrive, so a large
+     * mailbox never sits in memory as a whole. Clients that send
+     * {@code Accept: application/octet-stream} get the length-prefixed format
+     * of {@link BinaryMailboxPageWriter}; everyone else gets JSON.
+     *
+     * @param principal Authenticated user id (JWT subject).
+     * @param cursor    Opaque cursor from the previous page; omit to start.
+     * @param limit     Maximum number of messages in the page.
+     * @param maxBytes  Maximum total payload size of the page.
+     * @return The streamed page; 400 if the cursor is malformed.
+     */
+    @GetMapping("/sync")
+    public ResponseEntity<StreamingResponseBody> syncMessages(
+            @AuthenticationPrincipal String principal,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "1048576") long maxBytes,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (principal == null || principal.isBlank()) {
+            return ResponseEntity.status(401).build();
+        }
+
+        return streamSync(principal, cursor, limit, maxBytes, accept, false);
+    }
+
+    /**
+     * Ack-and-fetch sync: acknowledges (deletes) every message up to
+     * {@code cursor} and returns the next page, in one round trip and one
+     * transaction.
+     *
+     * The cursor a client sends is the one it got after persisting the
+     * previous page, and pages stop at the commit-safety horizon, so
+     * acknowledging by message id is exact: unlike the timestamp cutoff of
+     * {@code /ack}, messages that arrived in the same instant as the last one
+     * received are never removed. If streaming the
+     * page fails, the acknowledgement is rolled back and the client can retry
+     * with the same cursor. Parameters and response are the same as
+     * {@code GET /sync}.
+     *
+     * @param principal Authenticated user id (JWT subject).
+     * @param cursor    Cursor of the last page the client has stored; omit on the first call.
+     * @param limit     Maximum number of messages in the page.
+     * @param maxBytes  Maximum total payload size of the page.
+     * @return The streamed next page; 400 if the cursor is malformed.
+     */
+    @PostMapping("/sync")
+    public ResponseEntity<StreamingResponseBody> ackAndSyncMessages(
+            @AuthenticationPrincipal String principal,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "1048576") long maxBytes,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (principal == null || principal.isBlank()) {
+            return ResponseEntity.status(401).build();
+        }
+        return streamSync(principal, cursor, limit, maxBytes, accept, true);
+    }
 
-        return ResponseEntity.ok(payloads);
+    private ResponseEntity<StreamingResponseBody> streamSync(String principal, String cursor, int limit,
+            long maxBytes, String accept, boolean ack) {
+        long afterId = MailboxCursor.decode(cursor);
+        int pageLimit = Math.max(1, Math.min(limit, maxSyncMessages));
+        long pageBytes = Math.max(1, Math.min(maxBytes, maxSyncBytes));
+        boolean binary = acceptsBinary(accept);
+        long beforeId = syncCommitWindowMillis > 0
+                ? Snowflake.firstIdAt(System.currentTimeMillis() - syncCommitWindowMillis)
+                : Long.MAX_VALUE;
+
+        StreamingResponseBody body = out -> {
+            MailboxPageWriter writer = binary
+                    ? new BinaryMailboxPageWriter(out)
+                    : new JsonMailboxPageWriter(objectMapper, out);
+            if (ack) {
+                mailboxService.ackAndStreamPage(principal, afterId, beforeId, pageLimit, pageBytes, writer);
+            } else {
+                mailboxService.streamPage(principal, afterId, beforeId, pageLimit, pageBytes, writer);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(binary ? MediaType.APPLICATION_OCTET_STREAM : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * True only when the client explicitly lists {@code application/octet-stream};
+     * wildcards keep getting JSON so existing clients are unaffected.
+     */
+    private static boolean acceptsBinary(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return false;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream()
+                    .anyMatch(type -> type.equalsTypeAndSubtype(MediaType.APPLICATION_OCTET_STREAM));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
     }
 
     /**
      * Acknowledges (and deletes) mailbox messages for the authenticated user.
      *
-     * When {@link AckRequest#cutoff()} is provided, only messages with
+     * When {@link AckRequest#messageIds()} is provided, exactly those messages
+     * are removed (at most {@code app.mailbox.ack.max-ids} per call) and the
+     * response lists the ids that were already gone. Otherwise, when
+     * {@link AckRequest#cutoff()} is provided, only messages with
      * {@code createdAt <= cutoff} are removed so new arrivals between poll and
      * ack are preserved. Null cutoff wipes every queued message for the caller.
      *
      * @param principal Authenticated user id (JWT subject).
-     * @param request   Body with optional cutoff timestamp.
-     * @return number of rows removed.
+     * @param request   Body with optional message ids or cutoff timestamp.
+     * @return number of rows removed; 400 if too many ids are sent or one is
+     *         not a positive message id.
      */
     @PostMapping("/ack")
     @Transactional
@@ -99,14 +376,25 @@ public class MessageController {
             return ResponseEntity.status(401).build();
         }
 
-        long deleted;
-        if (request != null && request.cutoff() != null) {
-            deleted = messageRepository
-                    .deleteByRecipientHashAndCreatedAtLessThanEqual(principal, request.cutoff());
-        } else {
-            deleted = messageRepository.deleteByRecipientHash(principal);
+        if (request != null && request.messageIds() != null) {
+            if (request.messageIds().size() > maxAckIds
+                    || request.messageIds().stream().anyMatch(id -> id == null || id <= 0)) {
+                return ResponseEntity.badRequest().build();
+            }
+            Set<Long> deleted = mailboxService.ackIds(principal, request.messageIds());
+            List<Long> missing = request.messageIds().stream()
+                    .filter(id -> id != null && !deleted.contains(id))
+                    .distinct()
+                    .toList();
+            return ResponseEntity.ok(new AckResponse(deleted.size(), missing));
         }
 
+        long deleted = mailboxService.ackCreatedUpTo(principal, request != null ? request.cutoff() : null);
         return ResponseEntity.ok(new AckResponse(deleted));
     }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequests(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
 }
@@ -1,12 +1,23 @@
 package com.hermnet.api.dto;
 
 import java.time.LocalDateTime;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
- * Body for {@code POST /api/messages/ack}. A null cutoff acknowledges every
- * message currently queued for the authenticated user.
+ * Body for {@code POST /api/messages/ack}.
+ *
+ * When {@code message_ids} is present exactly those messages are
+ * acknowledged and the cutoff is ignored. Otherwise a null cutoff
+ * acknowledges every message currently queued for the authenticated user.
  *
- * @param cutoff Newest message timestamp to ack (inclusive).
+ * @param cutoff     Newest message timestamp to ack (inclusive).
+ * @param messageIds Ids of the messages the client has processed, as strings
+ *                   or numbers.
  */
-public record AckRequest(LocalDateTime cutoff) {
+public record AckRequest(
+        LocalDateTime cutoff,
+        @JsonProperty("message_ids") @JsonAlias("messageIds") List<Long> messageIds) {
 }
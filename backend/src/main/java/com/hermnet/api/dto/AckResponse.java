@@ -1,7 +1,24 @@
 package com.hermnet.api.dto;
 
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
 /**
- * Reply for {@code POST /api/messages/ack}: how many mailbox rows were removed.
+ * Reply for {@code POST /api/messages/ack}: how many mailbox rows were removed
+ * and, for id-based acks, which of the requested ids were already gone (or
+ * never belonged to the caller). Ids are strings, like everywhere else in the
+ * mailbox API.
  */
-public record AckResponse(long deleted) {
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AckResponse(
+        long deleted,
+        @JsonProperty("missing_ids") @JsonSerialize(contentUsing = ToStringSerializer.class) List<Long> missingIds) {
+
+    public AckResponse(long deleted) {
+        this(deleted, null);
+    }
 }
@@ -0,0 +1,18 @@
+package com.hermnet.api.dto;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * DTO for sending several secure messages in one request (for example one
+ * ciphertext per member of a group).
+ *
+ * @param messages Recipient/payload pairs; each is validated like a single
+ *                 {@link SendMessageRequest}.
+ */
+public record BatchSendRequest(
+        @NotEmpty(message = "At least one message is required") List<@NotNull @Valid SendMessageRequest> messages) {
+}
@@ -0,0 +1,66 @@
+package com.hermnet.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import java.time.LocalDateTime;
+
+/**
+ * JSON frame exchanged over the mailbox WebSocket ({@code /api/ws/mailbox}).
+ *
+ * Client → server types: {@code send}, {@code ack}, {@code credit},
+ * {@code reauth}. Server → client types: {@code message}, {@code sent},
+ * {@code acked}, {@code reauthed}, {@code error}. Only the fields relevant to a
+ * given type are set.
+ *
+ * @param type        Frame type.
+ * @param ref         Client correlation id, echoed in the reply.
+ * @param recipientId Recipient of a {@code send}.
+ * @param payload     Encrypted payload ({@code send} / {@code message}).
+ * @param ttlSeconds  Optional lifetime of a {@code send}, see
+ *                    {@link SendMessageRequest#ttlSeconds()}.
+ * @param id          Message id of a delivered {@code message}, as a string
+ *                    (64-bit ids do not fit a JavaScript number).
+ * @param createdAt   Arrival time of a delivered {@code message}.
+ * @param upTo        Newest message id acknowledged by an {@code ack} (inclusive).
+ * @param credits     Additional messages the client is ready to receive.
+ * @param token       Fresh JWT for {@code reauth}.
+ * @param deleted     Rows removed by an {@code ack}.
+ * @param error       Human readable reason of an {@code error}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MailboxFrame(
+        String type,
+        String ref,
+        String recipientId,
+        byte[] payload,
+        Integer ttlSeconds,
+        @JsonSerialize(using = ToStringSerializer.class) Long id,
+        LocalDateTime createdAt,
+        Long upTo,
+        Integer credits,
+        String token,
+        Long deleted,
+        String error) {
+
+    public static MailboxFrame message(Long id, LocalDateTime createdAt, byte[] payload) {
+        return new MailboxFrame("message", null, null, payload, null, id, createdAt, null, null, null, null, null);
+    }
+
+    public static MailboxFrame sent(String ref) {
+        return new MailboxFrame("sent", ref, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    public static MailboxFrame acked(String ref, long deleted) {
+        return new MailboxFrame("acked", ref, null, null, null, null, null, null, null, null, deleted, null);
+    }
+
+    public static MailboxFrame reauthed(String ref) {
+        return new MailboxFrame("reauthed", ref, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    public static MailboxFrame error(String ref, String error) {
+        return new MailboxFrame("error", ref, null, null, null, null, null, null, null, null, null, error);
+    }
+}
@@ -2,17 +2,37 @@ package com.hermnet.api.dto;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
 
+import java.time.LocalDateTime;
+
 /**
  * DTO for sending a secure message.
  *
  * @param recipientId The ID of the user to receive the message.
  * @param payload     Opaque encrypted payload (hybrid AES-GCM + RSA-OAEP). The
  *                    server never decodes it.
+ * @param ttlSeconds  Optional lifetime for ephemeral messages; the message is
+ *                    dropped after this many seconds even if never fetched.
+ *                    Null keeps the global retention window.
  */
 public record SendMessageRequest(
         @NotBlank(message = "Recipient ID is required") String recipientId,
 
-        @NotNull(message = "Payload is required") @Size(min = 1, message = "Payload cannot be empty") byte[] payload) {
+        @NotNull(message = "Payload is required") @Size(min = 1, message = "Payload cannot be empty") byte[] payload,
+
+        @Positive(message = "TTL must be positive") Integer ttlSeconds) {
+
+    public SendMessageRequest(String recipientId, byte[] payload) {
+        this(recipientId, payload, null);
+    }
+
+    /**
+     * @return When a message stored at {@code createdAt} expires, or null
+     *         without a TTL.
+     */
+    public LocalDateTime expiresAt(LocalDateTime createdAt) {
+        return ttlSeconds == null ? null : createdAt.plusSeconds(ttlSeconds);
+    }
 }
@@ -13,7 +13,7 @@ import java.time.LocalDateTime;
  * against the stored public key to authenticate the session.
  */
 @Entity
-@Table(name = "auth_challenges")
+@Table(name = "auth_challenges", indexes = @Index(name = "idx_auth_challenges_expires_at", columnList = "expires_at"))
 @Getter
 @Setter
 @AllArgsConstructor
@@ -15,7 +15,7 @@ import java.time.LocalDateTime;
  * - Security breach mitigation
  */
 @Entity
-@Table(name = "token_blacklist")
+@Table(name = "token_blacklist", indexes = @Index(name = "idx_token_blacklist_expires_at", columnList = "expires_at"))
 @Getter
 @Setter
 @AllArgsConstructor
@@ -2,6 +2,9 @@ package com.hermnet.api.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.Length;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import java.time.LocalDateTime;
 
 /**
@@ -14,7 +17,11 @@ import java.time.LocalDateTime;
  * deniability and minimize metadata leakage.
  */
 @Entity
-@Table(name = "mailbox", indexes = { @Index(name = "idx_mailbox_recipient", columnList = "recipient_hash") })
+@Table(name = "mailbox", indexes = {
+        @Index(name = "idx_mailbox_recipient_message", columnList = "recipient_hash, message_id"),
+        @Index(name = "idx_mailbox_payload_hash", columnList = "payload_hash"),
+        @Index(name = "idx_mailbox_created_at", columnList = "created_at"),
+        @Index(name = "idx_mailbox_expires_at", columnList = "expires_at") })
 @Getter
 @Setter
 @AllArgsConstructor
@@ -22,8 +29,12 @@ import java.time.LocalDateTime;
 @Builder
 public class Message {
 
+    /**
+     * Time-ordered id assigned in-app (see {@link Snowflake}). It is the
+     * ordering key for sync cursors and acks.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     @Column(name = "message_id")
     private Long messageId;
 
@@ -43,17 +54,43 @@ public class Message {
      * The bytes are produced by the client using hybrid encryption (AES-256-GCM
      * for the body, RSA-OAEP-SHA256 for the AES key). The server treats this as
      * opaque data and never attempts to decode it.
+     *
+     * Stored inline ({@code bytea} on PostgreSQL, with {@code STORAGE EXTERNAL}
+     * set by {@link com.hermnet.api.config.SchemaMigrationRunner}) rather than
+     * as a large object: deleting the row frees the bytes.
      */
-    @Lob
-    @Column(name = "payload", nullable = false)
+    @JdbcTypeCode(SqlTypes.VARBINARY)
+    @Column(name = "payload", nullable = false, length = Length.LONG32)
     private byte[] payload;
 
+    /**
+     * SHA-256 (hex) of a payload kept in
+     * {@link com.hermnet.api.repository.PayloadBlobStore} instead of inline;
+     * {@code payload} is then empty. Null for inline payloads.
+     */
+    @Column(name = "payload_hash", length = 64)
+    private String payloadHash;
+
+    /**
+     * Size in bytes of the stored file; set together with {@code payloadHash}.
+     */
+    @Column(name = "payload_length")
+    private Long payloadLength;
+
     /**
      * Timestamp when the message was received by the server.
      */
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
+    /**
+     * End of a sender-requested TTL, shorter than the global retention window.
+     * Expired messages are never delivered, even before the purge removes
+     * them. Null means the global window applies.
+     */
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
     /**
      * Automatically sets the creation timestamp before persisting.
      */
@@ -0,0 +1,99 @@
+package com.hermnet.api.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free generator of time-ordered 64-bit ids.
+ *
+ * Layout, most significant first: 1 unused sign bit, 41 bits of milliseconds
+ * since {@link #EPOCH_MILLIS} (about 69 years), 10 bits of node id and 12 bits
+ * of per-millisecond sequence. Ids of one node are strictly increasing; ids
+ * of different nodes are ordered by millisecond.
+ *
+ * The last millisecond and sequence are packed into a single
+ * {@link AtomicLong} and advanced with a CAS loop, so {@link #nextId()}
+ * neither locks nor allocates. When the 4096 ids of a millisecond are used up,
+ * or the wall clock steps backwards, the generator keeps counting into the
+ * next millisecond instead of waiting, so ids stay unique and monotonic.
+ */
+public final class Snowflake {
+
+    /** 2025-01-01T00:00:00Z. */
+    public static final long EPOCH_MILLIS = 1_735_689_600_000L;
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static volatile Snowflake shared = new Snowflake(0);
+
+    private final long nodeId;
+    private final LongSupplier clock;
+    /** (milliseconds since epoch &lt;&lt; SEQUENCE_BITS) | sequence of the last id handed out. */
+    private final AtomicLong state = new AtomicLong();
+
+    public Snowflake(long nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    Snowflake(long nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    /**
+     * Generator used for mailbox ids. Configured once at startup by
+     * {@link com.hermnet.api.config.IdGeneratorConfig}; defaults to node 0.
+     */
+    public static Snowflake shared() {
+        return shared;
+    }
+
+    public static void configureShared(Snowflake snowflake) {
+        shared = snowflake;
+    }
+
+    public long nodeId() {
+        return nodeId;
+    }
+
+    public long nextId() {
+        long now = clock.getAsLong() - EPOCH_MILLIS;
+        long current;
+        long next;
+        do {
+            current = state.get();
+            // A newer millisecond restarts the sequence; otherwise keep counting.
+            // Overflowing the sequence carries into the millisecond bits.
+            next = now > current >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : current + 1;
+        } while (!state.compareAndSet(current, next));
+
+        return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                | nodeId << SEQUENCE_BITS
+                | (next & SEQUENCE_MASK);
+    }
+
+    /**
+     * @return Wall-clock milliseconds encoded in an id.
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    /**
+     * @return Smallest id any node can generate at {@code epochMillis}; every
+     *         id generated earlier is lower.
+     */
+    public static long firstIdAt(long epochMillis) {
+        return Math.max(epochMillis - EPOCH_MILLIS, 0) << (NODE_BITS + SEQUENCE_BITS);
+    }
+
+    public static long nodeOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+}
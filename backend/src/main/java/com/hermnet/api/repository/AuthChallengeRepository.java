@@ -4,6 +4,10 @@ import java.time.LocalDateTime;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.hermnet.api.model.AuthChallenge;
 import com.hermnet.api.model.User;
@@ -37,4 +41,21 @@ public interface AuthChallengeRepository extends JpaRepository<AuthChallenge, Lo
      * @param expiryDate The cutoff date/time
      */
     void deleteByExpiresAtBefore(LocalDateTime expiryDate);
+
+    /**
+     * Deletes at most {@code limit} challenges that expired before the given
+     * time, in a transaction of its own.
+     *
+     * @param cutoff The cutoff date/time
+     * @param limit  Maximum number of rows to delete
+     * @return Number of deleted rows
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM auth_challenges WHERE challenge_id IN "
+            + "(SELECT challenge_id FROM auth_challenges WHERE expires_at < :cutoff LIMIT :limit)",
+            nativeQuery = true)
+    int deleteBatchExpiredBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    long countByExpiresAtBefore(LocalDateTime cutoff);
 }
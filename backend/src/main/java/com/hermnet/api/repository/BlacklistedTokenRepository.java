@@ -3,7 +3,11 @@ package com.hermnet.api.repository;
 import java.time.LocalDateTime;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.hermnet.api.model.BlacklistedToken;
 
@@ -21,4 +25,20 @@ public interface BlacklistedTokenRepository extends JpaRepository<BlacklistedTok
 	 */
 	void deleteByExpiresAtBefore(LocalDateTime expiryDate);
 
+	/**
+	 * Deletes at most {@code limit} tokens whose expiration time has passed,
+	 * in a transaction of its own.
+	 *
+	 * @param cutoff the cutoff timestamp
+	 * @param limit  maximum number of rows to delete
+	 * @return number of deleted rows
+	 */
+	@Transactional
+	@Modifying
+	@Query(value = "DELETE FROM token_blacklist WHERE jti IN "
+			+ "(SELECT jti FROM token_blacklist WHERE expires_at < :cutoff LIMIT :limit)", nativeQuery = true)
+	int deleteBatchExpiredBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+	long countByExpiresAtBefore(LocalDateTime cutoff);
+
 }
@@ -0,0 +1,169 @@
+package com.hermnet.api.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.hermnet.api.model.Message;
+import com.hermnet.api.model.Snowflake;
+
+/**
+ * {@link MailboxDao} on plain prepared statements.
+ *
+ * Skips what Hibernate adds to every mailbox call: entity instantiation into
+ * a persistence context, {@code @PrePersist} callbacks, dirty checking and
+ * the load-then-delete of derived delete methods. Payloads are written with
+ * {@code setBinaryStream} and read with {@code getBinaryStream}; the
+ * {@link Message} objects returned are plain values, never managed.
+ *
+ * Enabled with {@code app.mailbox.jdbc-fast-path.enabled=true}, in which case
+ * it replaces {@link MessageRepository} wherever a {@link MailboxDao} is
+ * injected.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "app.mailbox.jdbc-fast-path.enabled", havingValue = "true")
+public class JdbcMailboxDao implements MailboxDao {
+
+    private static final String COLUMNS =
+            "message_id, recipient_hash, payload, payload_hash, payload_length, created_at, expires_at";
+    private static final String UNEXPIRED = "(expires_at IS NULL OR expires_at > LOCALTIMESTAMP)";
+
+    private static final String INSERT_SQL = "INSERT INTO mailbox (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String FIND_NEWEST_FIRST_SQL = "SELECT " + COLUMNS
+            + " FROM mailbox WHERE recipient_hash = ? AND " + UNEXPIRED + " ORDER BY created_at DESC";
+    private static final String FIND_AFTER_SQL = "SELECT " + COLUMNS
+            + " FROM mailbox WHERE recipient_hash = ? AND message_id > ? AND created_at >= ? AND " + UNEXPIRED
+            + " ORDER BY message_id";
+    private static final String SUMMARY_SQL = "SELECT recipient_hash, COUNT(*), MAX(message_id) FROM mailbox WHERE ";
+    private static final String SUMMARIZE_ONE_SQL = SUMMARY_SQL + "recipient_hash = ? AND " + UNEXPIRED
+            + " GROUP BY recipient_hash";
+    private static final String SUMMARIZE_ALL_SQL = SUMMARY_SQL + UNEXPIRED + " GROUP BY recipient_hash";
+    private static final String DELETE_BEFORE_SQL = "DELETE FROM mailbox WHERE created_at < ?";
+    private static final String COUNT_BEFORE_SQL = "SELECT COUNT(*) FROM mailbox WHERE created_at < ?";
+    private static final String COUNT_EXPIRED_SQL = "SELECT COUNT(*) FROM mailbox WHERE expires_at < ?";
+
+    private static final RowMapper<Message> MESSAGE_MAPPER = JdbcMailboxDao::mapMessage;
+    private static final RowMapper<MailboxSummary> SUMMARY_MAPPER = (rs, row) -> new MailboxSummary(
+            rs.getString(1), rs.getLong(2), rs.getLong(3));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Snowflake snowflake;
+
+    public JdbcMailboxDao(DataSource dataSource, Snowflake snowflake) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.snowflake = snowflake;
+    }
+
+    @Override
+    @Transactional
+    public <S extends Message> S save(S message) {
+        long id = snowflake.nextId();
+        // Columns hold microseconds; truncate so the returned value equals the stored one.
+        LocalDateTime createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        byte[] payload = message.getPayload();
+        jdbcTemplate.update(INSERT_SQL, statement -> {
+            statement.setLong(1, id);
+            statement.setString(2, message.getRecipientHash());
+            statement.setBinaryStream(3, new ByteArrayInputStream(payload), payload.length);
+            statement.setString(4, message.getPayloadHash());
+            statement.setObject(5, message.getPayloadLength(), Types.BIGINT);
+            statement.setTimestamp(6, Timestamp.valueOf(createdAt));
+            statement.setTimestamp(7, message.getExpiresAt() == null ? null : Timestamp.valueOf(message.getExpiresAt()));
+        });
+        message.setMessageId(id);
+        message.setCreatedAt(createdAt);
+        return message;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Message> findByRecipientHashOrderByCreatedAtDesc(String recipientHash) {
+        return jdbcTemplate.query(FIND_NEWEST_FIRST_SQL, MESSAGE_MAPPER, recipientHash);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Message> findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+            String recipientHash, Long afterId, Limit limit) {
+        Timestamp createdAtFloor = Timestamp.valueOf(MailboxDao.createdAtFloor(afterId));
+        if (limit.isUnlimited()) {
+            return jdbcTemplate.query(FIND_AFTER_SQL, MESSAGE_MAPPER, recipientHash, afterId, createdAtFloor);
+        }
+        return jdbcTemplate.query(FIND_AFTER_SQL + " LIMIT ?", MESSAGE_MAPPER, recipientHash, afterId,
+                createdAtFloor, limit.max());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<MailboxSummary> summarizeMailbox(String recipientHash) {
+        return jdbcTemplate.query(SUMMARIZE_ONE_SQL, SUMMARY_MAPPER, recipientHash).stream().findFirst();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<MailboxSummary> summarizeMailboxes() {
+        return jdbcTemplate.query(SUMMARIZE_ALL_SQL, SUMMARY_MAPPER);
+    }
+
+    @Override
+    @Transactional
+    public void deleteByCreatedAtBefore(LocalDateTime expiryDate) {
+        jdbcTemplate.update(DELETE_BEFORE_SQL, Timestamp.valueOf(expiryDate));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countByCreatedAtBefore(LocalDateTime cutoff) {
+        Long count = jdbcTemplate.queryForObject(COUNT_BEFORE_SQL, Long.class, Timestamp.valueOf(cutoff));
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countByExpiresAtBefore(LocalDateTime now) {
+        Long count = jdbcTemplate.queryForObject(COUNT_EXPIRED_SQL, Long.class, Timestamp.valueOf(now));
+        return count == null ? 0 : count;
+    }
+
+    private static Message mapMessage(ResultSet rs, int row) throws SQLException {
+        long length = rs.getLong("payload_length");
+        Long payloadLength = rs.wasNull() ? null : length;
+        return Message.builder()
+                .messageId(rs.getLong("message_id"))
+                .recipientHash(rs.getString("recipient_hash"))
+                .payload(readPayload(rs))
+                .payloadHash(rs.getString("payload_hash"))
+                .payloadLength(payloadLength)
+                .createdAt(rs.getObject("created_at", LocalDateTime.class))
+                .expiresAt(rs.getObject("expires_at", LocalDateTime.class))
+                .build();
+    }
+
+    private static byte[] readPayload(ResultSet rs) throws SQLException {
+        try (InputStream stream = rs.getBinaryStream("payload")) {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.hermnet.api.repository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Limit;
+
+import com.hermnet.api.model.Message;
+import com.hermnet.api.model.Snowflake;
+
+/**
+ * The mailbox operations on the send, sync and ack paths.
+ *
+ * Reads never return messages whose {@code expiresAt} has passed, whether or
+ * not the purge has deleted them yet.
+ *
+ * {@link MessageRepository} implements them through Hibernate; with
+ * {@code app.mailbox.jdbc-fast-path.enabled=true} {@link JdbcMailboxDao}
+ * takes over as the primary bean and runs the same operations as plain
+ * prepared statements. Both behave identically.
+ *
+ * Queries keyed on a message id also bound {@code created_at} with
+ * {@link #createdAtFloor} or {@link #createdAtCeiling}, so on a partitioned
+ * {@code mailbox} PostgreSQL only visits the hourly partitions that can hold
+ * the rows.
+ *
+ * Deletions go through {@link MailboxJdbcRepository} instead, which reports
+ * the ids it removed so their payloads leave the hot tier as well.
+ */
+public interface MailboxDao {
+
+    /**
+     * How far a row's {@code created_at} may trail the timestamp in its id:
+     * it is the storing node's local time, taken a moment before the id, and
+     * may be off by clock skew between nodes or a daylight-saving change.
+     */
+    Duration CREATED_AT_SLACK = Duration.ofHours(2);
+
+    /**
+     * @return Lower bound on the {@code created_at} of every message with an
+     *         id above {@code messageId}.
+     */
+    static LocalDateTime createdAtFloor(long messageId) {
+        return createdAtOf(Math.max(messageId, 0)).minus(CREATED_AT_SLACK);
+    }
+
+    /**
+     * @return Upper bound on the {@code created_at} of every message with an
+     *         id up to {@code messageId}.
+     */
+    static LocalDateTime createdAtCeiling(long messageId) {
+        return createdAtOf(Math.max(messageId, 0)).plus(CREATED_AT_SLACK);
+    }
+
+    private static LocalDateTime createdAtOf(long messageId) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(Snowflake.timestampOf(messageId)), ZoneId.systemDefault());
+    }
+
+    /**
+     * Stores a message, assigning its id and {@code createdAt}. Declared like
+     * {@code CrudRepository.save} so both signatures merge in
+     * {@link MessageRepository}.
+     *
+     * @return The stored message.
+     */
+    <S extends Message> S save(S message);
+
+    List<Message> findByRecipientHashOrderByCreatedAtDesc(String recipientHash);
+
+    List<Message> findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+            String recipientHash, Long afterId, Limit limit);
+
+    /**
+     * Counts the pending messages of one mailbox; empty when it has none.
+     */
+    Optional<MailboxSummary> summarizeMailbox(String recipientHash);
+
+    /**
+     * Counts the pending messages of every non-empty mailbox in one
+     * aggregate query.
+     */
+    List<MailboxSummary> summarizeMailboxes();
+
+    void deleteByCreatedAtBefore(LocalDateTime expiryDate);
+
+    long countByCreatedAtBefore(LocalDateTime cutoff);
+
+    long countByExpiresAtBefore(LocalDateTime now);
+}
@@ -0,0 +1,188 @@
+package com.hermnet.api.repository;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Off-heap cache of recently stored inline payloads, keyed by message id.
+ *
+ * Most messages are synced seconds after they are sent, right after the
+ * push wake-up; keeping their bytes here spares PostgreSQL the payload reads
+ * of those syncs. The table stays the source of truth: a sync still asks the
+ * database which messages are pending and only takes their bytes from here
+ * (see {@link com.hermnet.api.service.MailboxService#streamPage}), so acks,
+ * expiry and inserts made by other nodes are always honoured.
+ *
+ * Payloads live in direct {@link ByteBuffer} slabs cut into fixed-size pages;
+ * an entry occupies as many pages as it needs, so there is no fragmentation
+ * and the heap never holds cached payloads. When the tier is full the least
+ * recently used entries are evicted. The memory is reserved once at startup
+ * ({@code app.mailbox.hot-tier.max-bytes}), which keeps GC pressure flat
+ * whatever the payload volume.
+ *
+ * Enabled with {@code app.mailbox.hot-tier.enabled=true}.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.mailbox.hot-tier.enabled", havingValue = "true")
+public class MailboxHotTier {
+
+    /** Largest slab; a direct buffer is indexed by int. */
+    private static final int MAX_SLAB_BYTES = 1 << 30;
+
+    private final int pageSize;
+    private final int pagesPerSlab;
+    private final ByteBuffer[] slabs;
+    private final int maxEntryBytes;
+
+    /** Stack of free page numbers. */
+    private final int[] freePages;
+    private int freeCount;
+
+    /** Access-ordered: iteration starts at the least recently used entry. */
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long storedBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public MailboxHotTier(MeterRegistry meterRegistry,
+            @Value("${app.mailbox.hot-tier.max-bytes:268435456}") long maxBytes,
+            @Value("${app.mailbox.hot-tier.page-bytes:4096}") int pageSize,
+            @Value("${app.mailbox.hot-tier.max-entry-bytes:1048576}") int maxEntryBytes) {
+        this.pageSize = Math.max(pageSize, 64);
+        this.pagesPerSlab = MAX_SLAB_BYTES / this.pageSize;
+        int totalPages = (int) Math.min(Math.max(maxBytes, this.pageSize) / this.pageSize, Integer.MAX_VALUE);
+        this.maxEntryBytes = (int) Math.min(Math.max(maxEntryBytes, 1), (long) totalPages * this.pageSize);
+
+        int slabCount = (totalPages + pagesPerSlab - 1) / pagesPerSlab;
+        this.slabs = new ByteBuffer[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            int pages = Math.min(pagesPerSlab, totalPages - i * pagesPerSlab);
+            slabs[i] = ByteBuffer.allocateDirect(pages * this.pageSize);
+        }
+        this.freePages = new int[totalPages];
+        for (int page = totalPages - 1; page >= 0; page--) {
+            freePages[freeCount++] = page;
+        }
+
+        this.hits = Counter.builder("hermnet.mailbox.hot_tier.lookups").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("hermnet.mailbox.hot_tier.lookups").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("hermnet.mailbox.hot_tier.evictions").register(meterRegistry);
+        Gauge.builder("hermnet.mailbox.hot_tier.bytes", this, MailboxHotTier::storedBytes)
+                .description("Payload bytes held off-heap")
+                .register(meterRegistry);
+        Gauge.builder("hermnet.mailbox.hot_tier.entries", this, MailboxHotTier::size).register(meterRegistry);
+    }
+
+    /** Pages held by one payload; the last one may be partly used. */
+    private record Entry(int[] pages, int length) {
+    }
+
+    /**
+     * Caches a payload, evicting least recently used entries to make room.
+     * Payloads above {@code max-entry-bytes} are not cached.
+     */
+    public synchronized void put(long messageId, byte[] payload) {
+        if (payload.length == 0 || payload.length > maxEntryBytes || entries.containsKey(messageId)) {
+            return;
+        }
+        int needed = (payload.length + pageSize - 1) / pageSize;
+        Iterator<Entry> lru = entries.values().iterator();
+        while (freeCount < needed && lru.hasNext()) {
+            release(lru.next());
+            lru.remove();
+            evictions.increment();
+        }
+
+        int[] pages = new int[needed];
+        for (int i = 0; i < needed; i++) {
+            pages[i] = freePages[--freeCount];
+            int offset = i * pageSize;
+            page(pages[i]).put(payload, offset, Math.min(pageSize, payload.length - offset));
+        }
+        entries.put(messageId, new Entry(pages, payload.length));
+        storedBytes += payload.length;
+    }
+
+    /**
+     * Copies a cached payload onto the heap.
+     *
+     * @return The payload, or null if it is not (or no longer) cached.
+     */
+    public synchronized byte[] get(long messageId) {
+        Entry entry = entries.get(messageId);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        byte[] payload = new byte[entry.length()];
+        for (int i = 0; i < entry.pages().length; i++) {
+            int offset = i * pageSize;
+            page(entry.pages()[i]).get(payload, offset, Math.min(pageSize, payload.length - offset));
+        }
+        return payload;
+    }
+
+    /** Drops acknowledged messages right away instead of waiting for eviction. */
+    public synchronized void removeAll(Collection<Long> messageIds) {
+        for (Long messageId : messageIds) {
+            Entry entry = entries.remove(messageId);
+            if (entry != null) {
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * Drops every payload whose id is below {@code messageId}, for rows
+     * removed in bulk without reporting their ids (dropped partitions).
+     *
+     * @return Number of entries removed.
+     */
+    public synchronized int removeOlderThan(long messageId) {
+        int removed = 0;
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Entry> cached = it.next();
+            if (cached.getKey() < messageId) {
+                release(cached.getValue());
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long storedBytes() {
+        return storedBytes;
+    }
+
+    private void release(Entry entry) {
+        for (int page : entry.pages()) {
+            freePages[freeCount++] = page;
+        }
+        storedBytes -= entry.length();
+    }
+
+    /** A view of one page, positioned at its start. */
+    private ByteBuffer page(int page) {
+        return slabs[page / pagesPerSlab].slice((page % pagesPerSlab) * pageSize, pageSize);
+    }
+}
@@ -0,0 +1,356 @@
+package com.hermnet.api.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.hermnet.api.dto.SendMessageRequest;
+import com.hermnet.api.model.Snowflake;
+
+/**
+ * Plain-JDBC access to the mailbox table for paths where materializing
+ * {@link com.hermnet.api.model.Message} entities is too expensive.
+ *
+ * Rows are read through a forward-only, read-only cursor with a bounded fetch
+ * size, and each payload is exposed as a stream while its row is current, so
+ * a caller that copies it straight to the socket never holds more than one
+ * payload in memory.
+ */
+@Repository
+public class MailboxJdbcRepository {
+
+    private static final String ROW_COLUMNS = "message_id, created_at, payload_hash, "
+            + "CASE WHEN payload_hash IS NULL THEN OCTET_LENGTH(payload) ELSE payload_length END AS stored_length";
+    private static final String AFTER_CLAUSE = " FROM mailbox WHERE recipient_hash = ? AND message_id > ? "
+            + "AND created_at >= ? AND (expires_at IS NULL OR expires_at > LOCALTIMESTAMP) ORDER BY message_id LIMIT ?";
+    private static final String SCAN_AFTER_SQL = "SELECT " + ROW_COLUMNS + ", payload" + AFTER_CLAUSE;
+    private static final String LIST_AFTER_SQL = "SELECT " + ROW_COLUMNS + AFTER_CLAUSE;
+
+    private static final String DELETE_IDS_SQL =
+            "DELETE FROM mailbox WHERE recipient_hash = ? AND message_id = ANY(?) AND created_at >= ?";
+    private static final String SELECT_IDS_SQL =
+            "SELECT message_id FROM mailbox WHERE recipient_hash = ? AND message_id = ANY(?) AND created_at >= ?";
+
+    private static final String UP_TO_ID_CONDITION = "recipient_hash = ? AND message_id <= ? AND created_at <= ?";
+    private static final String CREATED_UP_TO_CONDITION = "recipient_hash = ? AND created_at <= ?";
+    private static final String RECIPIENT_CONDITION = "recipient_hash = ?";
+    private static final String BATCH_CREATED_BEFORE_CONDITION =
+            "message_id IN (SELECT message_id FROM mailbox WHERE created_at < ? LIMIT ?)";
+    private static final String BATCH_EXPIRED_CONDITION =
+            "message_id IN (SELECT message_id FROM mailbox WHERE expires_at < ? LIMIT ?)";
+    private static final String DELETE_LISTED_IDS_SQL = "DELETE FROM mailbox WHERE message_id = ANY(?)";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO mailbox (message_id, recipient_hash, payload, payload_hash, payload_length, created_at, "
+            + "expires_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String REFERENCED_HASHES_SQL =
+            "SELECT DISTINCT payload_hash FROM mailbox WHERE payload_hash = ANY(?)";
+
+    /** Ids bound per DELETE statement when acknowledging by id. */
+    static final int DELETE_CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Snowflake snowflake;
+    private final PayloadBlobStore payloadBlobStore;
+    private final MailboxHotTier hotTier;
+    private volatile Boolean postgres;
+
+    public MailboxJdbcRepository(DataSource dataSource, Snowflake snowflake, PayloadBlobStore payloadBlobStore,
+            @Nullable MailboxHotTier hotTier, @Value("${app.mailbox.stream.fetch-size:16}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.snowflake = snowflake;
+        this.payloadBlobStore = payloadBlobStore;
+        this.hotTier = hotTier;
+        this.jdbcTemplate.setFetchSize(Math.max(fetchSize, 1));
+    }
+
+    /**
+     * Visits the unexpired messages of a recipient newer than {@code afterId},
+     * oldest first, until {@code maxRows} rows were seen or the visitor stops.
+     *
+     * Runs in a read-only transaction: PostgreSQL only honours the fetch size
+     * (server-side cursor) and can only read large objects with auto-commit off.
+     *
+     * @param recipientHash Mailbox owner.
+     * @param afterId       Exclusive lower bound on the message id.
+     * @param maxRows       Upper bound on the rows read.
+     * @param visitor       Called once per row; returning false stops the scan.
+     */
+    @Transactional(readOnly = true)
+    public void scanAfter(String recipientHash, long afterId, int maxRows, RowVisitor visitor) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SCAN_AFTER_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setString(1, recipientHash);
+            statement.setLong(2, afterId);
+            statement.setObject(3, MailboxDao.createdAtFloor(afterId));
+            statement.setInt(4, maxRows);
+            return statement;
+        }, (ResultSet rs) -> {
+            while (rs.next()) {
+                String hash = rs.getString("payload_hash");
+                try (InputStream stream = hash == null ? rs.getBinaryStream("payload") : payloadBlobStore.open(hash)) {
+                    boolean more = visitor.visit(rs.getLong("message_id"),
+                            rs.getObject("created_at", LocalDateTime.class), rs.getLong("stored_length"), stream);
+                    if (!more) {
+                        break;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Lists what {@link #scanAfter} would visit, without reading any payload.
+     * With {@link MailboxHotTier} the sync takes the bytes from memory when
+     * it holds every message of the page.
+     */
+    @Transactional(readOnly = true)
+    public List<StoredMessage> listAfter(String recipientHash, long afterId, int maxRows) {
+        return jdbcTemplate.query(LIST_AFTER_SQL, (rs, row) -> new StoredMessage(rs.getLong("message_id"),
+                rs.getObject("created_at", LocalDateTime.class), rs.getLong("stored_length"),
+                rs.getString("payload_hash")), recipientHash, afterId, MailboxDao.createdAtFloor(afterId), maxRows);
+    }
+
+    /**
+     * Stores many messages with one JDBC batch, bypassing the entity manager.
+     * Ids come from the same {@link Snowflake} as entity inserts; all rows
+     * share one {@code created_at}. Large payloads are written to
+     * {@link PayloadBlobStore} before the batch runs; inline ones are also
+     * offered to {@link MailboxHotTier}.
+     *
+     * @param messages Recipient/payload pairs to insert.
+     * @return The ids assigned, in the order of {@code messages}.
+     */
+    @Transactional
+    public long[] insertBatch(List<SendMessageRequest> messages) {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp createdAt = Timestamp.valueOf(now);
+        List<PayloadBlobStore.StoredPayload> payloads = messages.stream()
+                .map(message -> payloadBlobStore.store(message.payload()))
+                .toList();
+        long[] ids = new long[messages.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = snowflake.nextId();
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                PayloadBlobStore.StoredPayload payload = payloads.get(i);
+                statement.setLong(1, ids[i]);
+                statement.setString(2, messages.get(i).recipientId());
+                statement.setBytes(3, payload.inline());
+                statement.setString(4, payload.hash());
+                statement.setObject(5, payload.length(), Types.BIGINT);
+                statement.setTimestamp(6, createdAt);
+                LocalDateTime expiresAt = messages.get(i).expiresAt(now);
+                statement.setTimestamp(7, expiresAt == null ? null : Timestamp.valueOf(expiresAt));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return messages.size();
+            }
+        });
+        if (hotTier != null) {
+            for (int i = 0; i < ids.length; i++) {
+                if (payloads.get(i).hash() == null) {
+                    hotTier.put(ids[i], payloads.get(i).inline());
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Deletes the given messages of a recipient in chunks of
+     * {@value #DELETE_CHUNK_SIZE} ids, one {@code DELETE ... = ANY(?)}
+     * statement per chunk. Ids owned by other recipients are never touched.
+     *
+     * On PostgreSQL each statement reports the deleted ids through
+     * {@code RETURNING}; other databases (H2 in tests) look them up first
+     * inside the same transaction.
+     *
+     * @param recipientHash Mailbox owner (the authenticated principal).
+     * @param messageIds    Ids to acknowledge; duplicates and ids below 1 (never
+     *                      issued) are ignored.
+     * @return The ids that were actually deleted.
+     */
+    @Transactional
+    public Set<Long> deleteByIds(String recipientHash, Collection<Long> messageIds) {
+        List<Long> distinct = messageIds.stream().filter(id -> id != null && id > 0).distinct().toList();
+        Set<Long> deleted = new HashSet<>();
+        for (int from = 0; from < distinct.size(); from += DELETE_CHUNK_SIZE) {
+            Long[] chunk = distinct.subList(from, Math.min(from + DELETE_CHUNK_SIZE, distinct.size()))
+                    .toArray(Long[]::new);
+            if (isPostgres()) {
+                deleted.addAll(jdbcTemplate.query(DELETE_IDS_SQL + " RETURNING message_id",
+                        idsStatement(recipientHash, chunk), (rs, row) -> rs.getLong(1)));
+            } else {
+                deleted.addAll(jdbcTemplate.query(SELECT_IDS_SQL, idsStatement(recipientHash, chunk),
+                        (rs, row) -> rs.getLong(1)));
+                jdbcTemplate.update(DELETE_IDS_SQL, idsStatement(recipientHash, chunk));
+            }
+        }
+        evict(deleted);
+        return deleted;
+    }
+
+    /**
+     * Deletes every message of a recipient up to and including a message id.
+     *
+     * @return The ids that were deleted.
+     */
+    @Transactional
+    public List<Long> deleteUpTo(String recipientHash, long messageId) {
+        return deleteWhere(UP_TO_ID_CONDITION, recipientHash, messageId,
+                Timestamp.valueOf(MailboxDao.createdAtCeiling(messageId)));
+    }
+
+    /**
+     * Deletes every message of a recipient created at or before
+     * {@code cutoff}; a null cutoff deletes them all.
+     *
+     * @return The ids that were deleted.
+     */
+    @Transactional
+    public List<Long> deleteCreatedUpTo(String recipientHash, @Nullable LocalDateTime cutoff) {
+        return cutoff != null
+                ? deleteWhere(CREATED_UP_TO_CONDITION, recipientHash, Timestamp.valueOf(cutoff))
+                : deleteWhere(RECIPIENT_CONDITION, recipientHash);
+    }
+
+    /**
+     * Deletes at most {@code limit} messages created before {@code cutoff},
+     * in a transaction of its own, so the retention purge never holds locks
+     * or builds up WAL for more than one small batch.
+     *
+     * @return The ids that were deleted; fewer than {@code limit} means none are left.
+     */
+    @Transactional
+    public List<Long> deleteBatchCreatedBefore(LocalDateTime cutoff, int limit) {
+        return deleteWhere(BATCH_CREATED_BEFORE_CONDITION, Timestamp.valueOf(cutoff), limit);
+    }
+
+    /**
+     * Deletes at most {@code limit} messages whose sender-requested TTL ended
+     * before {@code now}; see {@link #deleteBatchCreatedBefore}.
+     */
+    @Transactional
+    public List<Long> deleteBatchExpiredBefore(LocalDateTime now, int limit) {
+        return deleteWhere(BATCH_EXPIRED_CONDITION, Timestamp.valueOf(now), limit);
+    }
+
+    /**
+     * Deletes the rows matching {@code condition} and drops their payloads
+     * from the hot tier. PostgreSQL reports the ids through
+     * {@code RETURNING}; other databases select them first and delete
+     * exactly those.
+     */
+    private List<Long> deleteWhere(String condition, Object... args) {
+        List<Long> deleted;
+        if (isPostgres()) {
+            deleted = jdbcTemplate.queryForList("DELETE FROM mailbox WHERE " + condition + " RETURNING message_id",
+                    Long.class, args);
+        } else {
+            deleted = jdbcTemplate.queryForList("SELECT message_id FROM mailbox WHERE " + condition, Long.class,
+                    args);
+            for (int from = 0; from < deleted.size(); from += DELETE_CHUNK_SIZE) {
+                Long[] chunk = deleted.subList(from, Math.min(from + DELETE_CHUNK_SIZE, deleted.size()))
+                        .toArray(Long[]::new);
+                jdbcTemplate.update(DELETE_LISTED_IDS_SQL, statement -> statement.setArray(1,
+                        statement.getConnection().createArrayOf("BIGINT", chunk)));
+            }
+        }
+        evict(deleted);
+        return deleted;
+    }
+
+    /**
+     * Cached payloads of deleted rows would never be read again; free their
+     * pages now instead of waiting for LRU eviction. If the transaction rolls
+     * back the rows merely lose their cached copy.
+     */
+    private void evict(Collection<Long> deleted) {
+        if (hotTier != null && !deleted.isEmpty()) {
+            hotTier.removeAll(deleted);
+        }
+    }
+
+    /**
+     * Returns which of the given payload hashes are still referenced by a
+     * mailbox row; used by {@link PayloadBlobStore#sweep}.
+     */
+    @Transactional(readOnly = true)
+    public Set<String> referencedPayloadHashes(List<String> hashes) {
+        if (hashes.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbcTemplate.query(REFERENCED_HASHES_SQL,
+                statement -> statement.setArray(1,
+                        statement.getConnection().createArrayOf("VARCHAR", hashes.toArray(String[]::new))),
+                (rs, row) -> rs.getString(1)));
+    }
+
+    private static PreparedStatementSetter idsStatement(String recipientHash, Long[] ids) {
+        long oldest = Math.max(Arrays.stream(ids).mapToLong(Long::longValue).min().orElse(1), 1);
+        return statement -> {
+            statement.setString(1, recipientHash);
+            statement.setArray(2, statement.getConnection().createArrayOf("BIGINT", ids));
+            statement.setObject(3, MailboxDao.createdAtFloor(oldest - 1));
+        };
+    }
+
+    private boolean isPostgres() {
+        Boolean cached = postgres;
+        if (cached == null) {
+            cached = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName()));
+            postgres = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * A mailbox row as listed by {@link #listAfter}; {@code payloadHash} is
+     * null for inline payloads.
+     */
+    public record StoredMessage(long messageId, LocalDateTime createdAt, long length, String payloadHash) {
+    }
+
+    /**
+     * Receives mailbox rows from {@link #scanAfter}. The payload stream is only
+     * valid during the call.
+     */
+    @FunctionalInterface
+    public interface RowVisitor {
+
+        boolean visit(long messageId, LocalDateTime createdAt, long length, InputStream payload)
+                throws IOException;
+    }
+}
@@ -0,0 +1,11 @@
+package com.hermnet.api.repository;
+
+/**
+ * Pending (unexpired) messages of one mailbox, as counted by the database.
+ *
+ * @param recipientHash Mailbox owner.
+ * @param count         Number of pending messages.
+ * @param maxMessageId  Newest pending message id.
+ */
+public record MailboxSummary(String recipientHash, long count, long maxMessageId) {
+}
@@ -2,8 +2,13 @@ package com.hermnet.api.repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.hermnet.api.model.Message;
 
@@ -11,8 +16,15 @@ import com.hermnet.api.model.Message;
  * Repository interface for Message entity database operations.
  * 
  * Provides methods to store and retrieve secure, end-to-end encrypted messages.
+ * Also the default (Hibernate) implementation of {@link MailboxDao}.
  */
-public interface MessageRepository extends JpaRepository<Message, Long> {
+public interface MessageRepository extends JpaRepository<Message, Long>, MailboxDao {
+
+    /** Lazy expiry: rows past their TTL are filtered out until the purge deletes them. */
+    String UNEXPIRED = "(m.expiresAt IS NULL OR m.expiresAt > LOCAL DATETIME)";
+
+    @Override
+    <S extends Message> S save(S entity);
 
     /**
      * Retrieves all messages for a specific recipient hash, ordered by creation
@@ -23,9 +35,25 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
      * that the most recent communications appear at the top of the list.
      * 
      * @param recipientHash The hashed ID of the user to retrieve messages for
-     * @return A list of messages for the recipient, ordered by createdAt descending
+     * @return A list of unexpired messages for the recipient, ordered by
+     *         createdAt descending
      */
-    List<Message> findByRecipientHashOrderByCreatedAtDesc(String recipientHash);
+    @Transactional(readOnly = true)
+    @Query("SELECT m FROM Message m WHERE m.recipientHash = :recipientHash AND " + UNEXPIRED
+            + " ORDER BY m.createdAt DESC")
+    List<Message> findByRecipientHashOrderByCreatedAtDesc(@Param("recipientHash") String recipientHash);
+
+    @Override
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.hermnet.api.repository.MailboxSummary(m.recipientHash, COUNT(m), MAX(m.messageId)) "
+            + "FROM Message m WHERE m.recipientHash = :recipientHash AND " + UNEXPIRED + " GROUP BY m.recipientHash")
+    Optional<MailboxSummary> summarizeMailbox(@Param("recipientHash") String recipientHash);
+
+    @Override
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.hermnet.api.repository.MailboxSummary(m.recipientHash, COUNT(m), MAX(m.messageId)) "
+            + "FROM Message m WHERE " + UNEXPIRED + " GROUP BY m.recipientHash")
+    List<MailboxSummary> summarizeMailboxes();
 
     /**
      * Deletes all messages created before a specific timestamp.
@@ -39,6 +67,14 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
      */
     void deleteByCreatedAtBefore(LocalDateTime expiryDate);
 
+    @Override
+    @Transactional(readOnly = true)
+    long countByCreatedAtBefore(LocalDateTime cutoff);
+
+    @Override
+    @Transactional(readOnly = true)
+    long countByExpiresAtBefore(LocalDateTime now);
+
     /**
      * Bulk delete messages the recipient has acknowledged. A null cutoff removes
      * every message currently queued for the recipient.
@@ -50,4 +86,25 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     long deleteByRecipientHashAndCreatedAtLessThanEqual(String recipientHash, LocalDateTime cutoff);
 
     long deleteByRecipientHash(String recipientHash);
+
+    /**
+     * Retrieves the oldest messages of a recipient that come after a given id,
+     * in ascending id (arrival) order.
+     *
+     * @param recipientHash The hashed ID of the recipient
+     * @param afterId       Exclusive lower bound on the message id
+     * @param limit         Maximum number of messages to return
+     * @return Up to {@code limit} unexpired messages with {@code messageId > afterId}
+     */
+    @Override
+    default List<Message> findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+            String recipientHash, Long afterId, Limit limit) {
+        return findAfterMessageId(recipientHash, afterId, MailboxDao.createdAtFloor(afterId), limit);
+    }
+
+    @Transactional(readOnly = true)
+    @Query("SELECT m FROM Message m WHERE m.recipientHash = :recipientHash AND m.messageId > :afterId "
+            + "AND m.createdAt >= :createdAtFloor AND " + UNEXPIRED + " ORDER BY m.messageId ASC")
+    List<Message> findAfterMessageId(@Param("recipientHash") String recipientHash, @Param("afterId") Long afterId,
+            @Param("createdAtFloor") LocalDateTime createdAtFloor, Limit limit);
 }
@@ -0,0 +1,339 @@
+package com.hermnet.api.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content-addressed file store for large mailbox payloads.
+ *
+ * Payloads at or above the inline threshold are written to
+ * {@code <dir>/ab/cd/<sha-256>} and the mailbox row keeps only the hash and
+ * length, so multi-megabyte ciphertexts stay out of the table, the WAL and
+ * database backups. Smaller payloads, and every payload while the store is
+ * disabled, stay inline.
+ *
+ * Crash safety comes from ordering rather than transactions: a file is
+ * written to a temporary name, fsynced and atomically renamed before its row
+ * is inserted, and it is only removed by {@link #sweep} once no row refers to
+ * it any more. A crash can therefore leave an unreferenced file behind, which
+ * the next sweep removes, but never a row without its file.
+ *
+ * With more than one node the directory must be a volume every node mounts
+ * (NFS, EFS, ...). Any node may serve a payload another node stored, and the
+ * sweep runs on only one node at a time, so a node-local directory would both
+ * fail those reads and never clean up the other nodes' files.
+ */
+@Repository
+@Slf4j
+public class PayloadBlobStore {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String TOMBSTONE_SUFFIX = ".deleting";
+
+    private final Path root;
+    private final boolean enabled;
+    private final int inlineThresholdBytes;
+
+    public PayloadBlobStore(
+            @Value("${app.mailbox.blob-store.dir:data/mailbox-blobs}") Path root,
+            @Value("${app.mailbox.blob-store.enabled:false}") boolean enabled,
+            @Value("${app.mailbox.blob-store.inline-threshold-bytes:262144}") int inlineThresholdBytes) {
+        this.root = root.toAbsolutePath();
+        this.enabled = enabled;
+        this.inlineThresholdBytes = Math.max(inlineThresholdBytes, 1);
+    }
+
+    /**
+     * Decides where a payload lives and, for large ones, writes the file.
+     * Must be called before the row is inserted.
+     *
+     * @param payload Encrypted payload about to be stored.
+     * @return Either the inline bytes or the hash and length of the file.
+     */
+    public StoredPayload store(byte[] payload) {
+        if (!enabled || payload.length < inlineThresholdBytes) {
+            return StoredPayload.inline(payload);
+        }
+        String hash = sha256(payload);
+        try {
+            write(hash, payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Storing mailbox payload " + hash + " failed", e);
+        }
+        return StoredPayload.external(hash, payload.length);
+    }
+
+    /**
+     * Opens a stored payload. The stream's {@link InputStream#transferTo}
+     * hands the copy to {@link FileChannel#transferTo}, so the bytes never
+     * pass through a heap buffer of the payload's size.
+     */
+    public InputStream open(String hash) throws IOException {
+        return new BlobInputStream(FileChannel.open(pathOf(hash), StandardOpenOption.READ));
+    }
+
+    public byte[] read(String hash) {
+        try {
+            return Files.readAllBytes(pathOf(hash));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading mailbox payload " + hash + " failed", e);
+        }
+    }
+
+    /**
+     * Deletes files no mailbox row refers to. Only files untouched for at
+     * least {@code grace} are considered, which covers payloads written for
+     * rows whose transaction has not committed yet.
+     *
+     * A file is first renamed to a tombstone and its age checked again there,
+     * so a concurrent {@link #store} of the same ciphertext either refreshed
+     * it before the rename (the tombstone is young and moves back) or finds
+     * it gone and writes it again; it is never deleted under a new row.
+     * Tombstones left by a crash are settled the same way on the next run.
+     * Not meant to run concurrently with itself.
+     *
+     * @param grace      Minimum age of a file before it may be deleted.
+     * @param batchSize  Hashes checked per {@code referenced} call.
+     * @param referenced Returns which of the given hashes are still in use.
+     * @return Number of files deleted.
+     */
+    public int sweep(Duration grace, int batchSize, Function<List<String>, Set<String>> referenced)
+            throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        Instant cutoff = Instant.now().minus(grace);
+        int deleted = 0;
+        List<Path> candidates = new ArrayList<>(batchSize);
+        try (Stream<Path> files = Files.walk(root, 3)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TOMBSTONE_SUFFIX) && name.length() > 64) {
+                    deleted += settle(file, file.resolveSibling(name.substring(0, 64)), cutoff);
+                    continue;
+                }
+                if (!olderThan(file, cutoff)) {
+                    continue;
+                }
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    deleted += deleteTemp(file);
+                    continue;
+                }
+                candidates.add(file);
+                if (candidates.size() == batchSize) {
+                    deleted += deleteUnreferenced(candidates, cutoff, referenced);
+                    candidates.clear();
+                }
+            }
+        }
+        if (!candidates.isEmpty()) {
+            deleted += deleteUnreferenced(candidates, cutoff, referenced);
+        }
+        return deleted;
+    }
+
+    Path pathOf(String hash) {
+        if (hash.length() != 64 || !hash.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            throw new IllegalArgumentException("Not a payload hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private void write(String hash, byte[] payload) throws IOException {
+        Path target = pathOf(hash);
+        if (Files.exists(target)) {
+            // Same ciphertext already stored; refresh it so a running sweep leaves it alone.
+            try {
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+                return;
+            } catch (NoSuchFileException e) {
+                // A sweep took it in between: store it again.
+            }
+        }
+        Path dir = Files.createDirectories(target.getParent());
+        Path temp = dir.resolve(hash + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(temp);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        syncDirectory(dir);
+    }
+
+    private int deleteUnreferenced(List<Path> files, Instant cutoff,
+            Function<List<String>, Set<String>> referenced) {
+        Set<String> inUse = referenced.apply(files.stream().map(file -> file.getFileName().toString()).toList());
+        int deleted = 0;
+        for (Path file : files) {
+            if (!inUse.contains(file.getFileName().toString())) {
+                deleted += deleteIfOlder(file, cutoff);
+            }
+        }
+        return deleted;
+    }
+
+    /** Moves the file aside before re-checking its age; see {@link #sweep}. */
+    private static int deleteIfOlder(Path file, Instant cutoff) {
+        Path tombstone = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + TOMBSTONE_SUFFIX);
+        try {
+            Files.move(file, tombstone, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            log.warn("Could not delete mailbox payload file {}: {}", file.getFileName(), e.getMessage());
+            return 0;
+        }
+        return settle(tombstone, file, cutoff);
+    }
+
+    /**
+     * Deletes a tombstone that is still old, otherwise puts it back: the
+     * payload was stored again before the rename.
+     */
+    private static int settle(Path tombstone, Path target, Instant cutoff) {
+        try {
+            if (olderThan(tombstone, cutoff)) {
+                return Files.deleteIfExists(tombstone) ? 1 : 0;
+            }
+            Files.move(tombstone, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            deleteTemp(tombstone);
+        } catch (IOException e) {
+            log.warn("Could not settle mailbox payload file {}: {}", target.getFileName(), e.getMessage());
+        }
+        return 0;
+    }
+
+    private static int deleteTemp(Path file) {
+        try {
+            return Files.deleteIfExists(file) ? 1 : 0;
+        } catch (IOException e) {
+            log.warn("Could not delete mailbox payload file {}: {}", file.getFileName(), e.getMessage());
+            return 0;
+        }
+    }
+
+    private static boolean olderThan(Path file, Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant().isBefore(cutoff);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Makes the rename itself durable; not every platform can open a directory. */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Directory fsync not supported for {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private static String sha256(byte[] payload) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(payload));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Where one payload ended up: {@code inline} bytes for the row, or the
+     * {@code hash} and {@code length} of a stored file (with empty inline bytes).
+     */
+    public record StoredPayload(byte[] inline, String hash, Long length) {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        static StoredPayload inline(byte[] payload) {
+            return new StoredPayload(payload, null, null);
+        }
+
+        static StoredPayload external(String hash, long length) {
+            return new StoredPayload(EMPTY, hash, length);
+        }
+    }
+
+    /** Reads a payload file; {@link #transferTo} copies channel to channel. */
+    private static final class BlobInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final InputStream delegate;
+
+        private BlobInputStream(FileChannel channel) {
+            this.channel = channel;
+            this.delegate = Channels.newInputStream(channel);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return delegate.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return delegate.read(b, off, len);
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = channel.position();
+            long size = channel.size();
+            long transferred = 0;
+            while (position + transferred < size) {
+                transferred += channel.transferTo(position + transferred, size - position - transferred, target);
+            }
+            channel.position(size);
+            return transferred;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.hermnet.api.repository;
 
+import java.util.Collection;
 import java.util.Optional;
 import com.hermnet.api.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -30,4 +35,15 @@ public interface UserRepository extends JpaRepository<User, String> {
      *         with that key
      */
     Optional<User> findByPublicKey(String publicKey);
-}
\ No newline at end of file
+
+    /**
+     * Removes push tokens that the push provider reported as no longer valid.
+     *
+     * @param tokens Dead registration tokens
+     * @return Number of users whose token was cleared
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE User u SET u.pushToken = NULL WHERE u.pushToken IN :tokens")
+    int clearPushTokens(@Param("tokens") Collection<String> tokens);
+}
@@ -0,0 +1,83 @@
+package com.hermnet.api.security;
+
+import java.time.Instant;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.hermnet.api.service.TokenBlacklistService;
+
+import io.jsonwebtoken.Claims;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Authenticates WebSocket upgrades with the same JWTs used by the REST API.
+ *
+ * The token is read from the {@code Authorization: Bearer} header or, for
+ * clients that cannot set headers on the upgrade request, from the
+ * {@code access_token} query parameter. The subject and expiry are stored as
+ * session attributes so the handler can enforce expiry for the lifetime of the
+ * connection.
+ */
+@Component
+@RequiredArgsConstructor
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String PRINCIPAL_ATTRIBUTE = "hermnet.principal";
+    public static final String EXPIRES_AT_ATTRIBUTE = "hermnet.tokenExpiresAt";
+
+    private final JwtTokenProvider jwtTokenProvider;
+    private final TokenBlacklistService tokenBlacklistService;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String token = resolveToken(request);
+        if (token == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        try {
+            Claims claims = jwtTokenProvider.parseClaims(token);
+            if (tokenBlacklistService.isBlacklisted(claims.getId()) || claims.getExpiration() == null) {
+                response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                return false;
+            }
+            attributes.put(PRINCIPAL_ATTRIBUTE, claims.getSubject());
+            attributes.put(EXPIRES_AT_ATTRIBUTE, claims.getExpiration().toInstant());
+            return true;
+        } catch (Exception e) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    private String resolveToken(ServerHttpRequest request) {
+        String bearerToken = request.getHeaders().getFirst("Authorization");
+        if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
+            return bearerToken.substring(7);
+        }
+        return UriComponentsBuilder.fromUri(request.getURI()).build()
+                .getQueryParams().getFirst("access_token");
+    }
+
+    /**
+     * @return Expiry stored by {@link #beforeHandshake}, or {@link Instant#EPOCH} if missing.
+     */
+    public static Instant expiresAt(Map<String, Object> attributes) {
+        Object value = attributes.get(EXPIRES_AT_ATTRIBUTE);
+        return value instanceof Instant instant ? instant : Instant.EPOCH;
+    }
+}
@@ -0,0 +1,55 @@
+package com.hermnet.api.service;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Writes a sync page in the compact {@code application/octet-stream} format.
+ *
+ * All integers are big-endian. The body is a sequence of message frames
+ * followed by one end frame:
+ * <pre>
+ * message: int64 id (&gt; 0) | int64 createdAt (epoch millis) | int32 length | length raw payload bytes
+ * end:     int64 0 | int8 hasMore (0/1) | int16 cursorLength | cursorLength ASCII bytes of nextCursor
+ * </pre>
+ * Payloads are copied from the database stream to the socket as-is, without
+ * Base64 and without an intermediate array.
+ */
+public class BinaryMailboxPageWriter implements MailboxPageWriter {
+
+    private final DataOutputStream out;
+
+    public BinaryMailboxPageWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    @Override
+    public void begin() {
+    }
+
+    @Override
+    public void message(long id, LocalDateTime createdAt, long length, InputStream payload) throws IOException {
+        out.writeLong(id);
+        out.writeLong(createdAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        out.writeInt(Math.toIntExact(length));
+        long copied = payload.transferTo(out);
+        if (copied != length) {
+            throw new IOException("Payload of message " + id + " had " + copied + " bytes, expected " + length);
+        }
+    }
+
+    @Override
+    public void end(String nextCursor, boolean hasMore) throws IOException {
+        byte[] cursor = nextCursor != null ? nextCursor.getBytes(StandardCharsets.US_ASCII) : new byte[0];
+        out.writeLong(0L);
+        out.writeByte(hasMore ? 1 : 0);
+        out.writeShort(cursor.length);
+        out.write(cursor);
+        out.flush();
+    }
+}
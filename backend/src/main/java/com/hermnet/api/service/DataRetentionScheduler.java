@@ -2,42 +2,161 @@ package com.hermnet.api.service;
 
 import com.hermnet.api.repository.AuthChallengeRepository;
 import com.hermnet.api.repository.BlacklistedTokenRepository;
-import com.hermnet.api.repository.MessageRepository;
-import lombok.RequiredArgsConstructor;
+import com.hermnet.api.repository.MailboxDao;
+import com.hermnet.api.repository.MailboxJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Scheduled task that enforces ephemeral data retention for privacy compliance.
  *
- * Every hour it removes:
- * - mailbox messages older than the configured retention window
+ * Every few seconds it removes:
+ * - mailbox messages older than the configured retention window (whole
+ *   expired partitions are dropped hourly by {@link MailboxPartitionManager})
+ * - mailbox messages whose sender-requested TTL has ended
  * - expired authentication challenges
  * - expired blacklisted tokens
+ *
+ * Rows are deleted in small batches, each committed on its own, until a
+ * table has nothing left to purge or the run's time budget is spent; the
+ * next run picks up where this one stopped. Expired data is removed
+ * continuously instead of in one large DELETE at the top of every hour.
+ *
+ * Only one node purges at a time ({@link MaintenanceLock}); the others
+ * skip the cycle.
+ *
+ * Metrics, tagged by table: {@code hermnet.retention.purged} (rows deleted),
+ * {@code hermnet.retention.rows.per.second} (rate of the last run),
+ * {@code hermnet.retention.backlog} (expired rows left when a run ran out of
+ * budget) and {@code hermnet.retention.lag.seconds} (time since the table was
+ * last fully purged).
  */
 @Component
-@RequiredArgsConstructor
 public class DataRetentionScheduler {
 
-    private final MessageRepository messageRepository;
-    private final AuthChallengeRepository authChallengeRepository;
-    private final BlacklistedTokenRepository blacklistedTokenRepository;
+    private final MaintenanceLock maintenanceLock;
+    private final long mailboxRetentionHours;
+    private final int batchSize;
+    private final long runBudgetNanos;
+    private final PurgeTarget mailbox;
+    private final List<PurgeTarget> targets;
 
-    @Value("${app.privacy.data-retention.mailbox-hours:24}")
-    private long mailboxRetentionHours;
+    public DataRetentionScheduler(
+            MailboxDao mailboxDao,
+            MailboxJdbcRepository mailboxJdbcRepository,
+            AuthChallengeRepository authChallengeRepository,
+            BlacklistedTokenRepository blacklistedTokenRepository,
+            MaintenanceLock maintenanceLock,
+            MeterRegistry meterRegistry,
+            @Value("${app.privacy.data-retention.mailbox-hours:24}") long mailboxRetentionHours,
+            @Value("${app.privacy.data-retention.batch-size:5000}") int batchSize,
+            @Value("${app.privacy.data-retention.run-budget-ms:2000}") long runBudgetMillis) {
+        this.maintenanceLock = maintenanceLock;
+        this.mailboxRetentionHours = mailboxRetentionHours;
+        this.batchSize = Math.max(batchSize, 1);
+        this.runBudgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(runBudgetMillis, 0));
 
-    @Scheduled(cron = "${app.privacy.data-retention.cleanup-cron:0 0 * * * *}")
-    @Transactional
+        // Mailbox deletes report their ids so the hot tier drops the payloads too.
+        this.mailbox = new PurgeTarget("mailbox",
+                (cutoff, limit) -> mailboxJdbcRepository.deleteBatchCreatedBefore(cutoff, limit).size(),
+                mailboxDao::countByCreatedAtBefore, meterRegistry);
+        this.targets = List.of(mailbox,
+                new PurgeTarget("mailbox_ttl",
+                        (now, limit) -> mailboxJdbcRepository.deleteBatchExpiredBefore(now, limit).size(),
+                        mailboxDao::countByExpiresAtBefore, meterRegistry),
+                new PurgeTarget("auth_challenges", authChallengeRepository::deleteBatchExpiredBefore,
+                        authChallengeRepository::countByExpiresAtBefore, meterRegistry),
+                new PurgeTarget("token_blacklist", blacklistedTokenRepository::deleteBatchExpiredBefore,
+                        blacklistedTokenRepository::countByExpiresAtBefore, meterRegistry));
+    }
+
+    @Scheduled(fixedDelayString = "${app.privacy.data-retention.purge-interval-ms:10000}")
     public void purgeExpiredData() {
+        maintenanceLock.runExclusively("data-retention", this::purge);
+    }
+
+    private void purge() {
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime mailboxCutoff = now.minusHours(mailboxRetentionHours);
+        long deadline = System.nanoTime() + runBudgetNanos;
+
+        for (PurgeTarget target : targets) {
+            target.purge(target == mailbox ? mailboxCutoff : now, deadline);
+        }
+    }
+
+    /** One table's batched delete, count and metrics. */
+    private final class PurgeTarget {
+
+        private final BiFunction<LocalDateTime, Integer, Integer> deleteBatch;
+        private final Function<LocalDateTime, Long> countExpired;
+        private final Counter purged;
+        private volatile double rowsPerSecond;
+        private volatile long backlog;
+        /** {@code System.nanoTime()} of the first run that could not finish, 0 while caught up. */
+        private volatile long behindSince;
+
+        PurgeTarget(String table, BiFunction<LocalDateTime, Integer, Integer> deleteBatch,
+                Function<LocalDateTime, Long> countExpired, MeterRegistry registry) {
+            this.deleteBatch = deleteBatch;
+            this.countExpired = countExpired;
+            this.purged = Counter.builder("hermnet.retention.purged")
+                    .description("Expired rows deleted by the retention purge")
+                    .tag("table", table)
+                    .register(registry);
+            Gauge.builder("hermnet.retention.rows.per.second", this, t -> t.rowsPerSecond)
+                    .tag("table", table)
+                    .register(registry);
+            Gauge.builder("hermnet.retention.backlog", this, t -> t.backlog)
+                    .description("Expired rows still waiting to be purged")
+                    .tag("table", table)
+                    .register(registry);
+            Gauge.builder("hermnet.retention.lag.seconds", this, PurgeTarget::lagSeconds)
+                    .tag("table", table)
+                    .register(registry);
+        }
+
+        /**
+         * Deletes batches until one comes back short or the deadline passes.
+         * At least one batch runs, so a slow table never starves the others.
+         */
+        void purge(LocalDateTime cutoff, long deadline) {
+            long start = System.nanoTime();
+            long deleted = 0;
+            boolean drained;
+            do {
+                int batch = deleteBatch.apply(cutoff, batchSize);
+                deleted += batch;
+                drained = batch < batchSize;
+            } while (!drained && System.nanoTime() - deadline < 0);
+
+            purged.increment(deleted);
+            long elapsed = Math.max(System.nanoTime() - start, 1);
+            rowsPerSecond = deleted * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            if (drained) {
+                backlog = 0;
+                behindSince = 0;
+            } else {
+                backlog = countExpired.apply(cutoff);
+                if (behindSince == 0) {
+                    behindSince = start;
+                }
+            }
+        }
 
-        messageRepository.deleteByCreatedAtBefore(mailboxCutoff);
-        authChallengeRepository.deleteByExpiresAtBefore(now);
-        blacklistedTokenRepository.deleteByExpiresAtBefore(now);
+        double lagSeconds() {
+            long since = behindSince;
+            return since == 0 ? 0 : (System.nanoTime() - since) / (double) TimeUnit.SECONDS.toNanos(1);
+        }
     }
-}
\ No newline at end of file
+}
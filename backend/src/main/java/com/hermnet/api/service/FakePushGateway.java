@@ -0,0 +1,112 @@
+package com.hermnet.api.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process stand-in for FCM used to load-test the send path offline.
+ *
+ * Every call sleeps for {@code latency-ms} plus a random jitter, can fail as a
+ * whole with probability {@code failure-rate}, and marks individual pushes as
+ * retryable or dead with the configured rates. {@code max-per-second} caps the
+ * simulated provider throughput: calls wait until the budget for their batch
+ * is available, the way FCM quota throttling backs senders off.
+ */
+@Component
+@ConditionalOnProperty(name = "app.push.gateway", havingValue = "fake")
+public class FakePushGateway implements PushGateway {
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double failureRate;
+    private final double retryableRate;
+    private final double deadTokenRate;
+    private final long nanosPerMessage;
+
+    private final AtomicLong nextFreeSlot = new AtomicLong(System.nanoTime());
+    private final AtomicLong accepted = new AtomicLong();
+    private final Counter acceptedCounter;
+
+    public FakePushGateway(
+            MeterRegistry meterRegistry,
+            @Value("${app.push.fake.latency-ms:0}") long latencyMillis,
+            @Value("${app.push.fake.jitter-ms:0}") long jitterMillis,
+            @Value("${app.push.fake.failure-rate:0}") double failureRate,
+            @Value("${app.push.fake.retryable-rate:0}") double retryableRate,
+            @Value("${app.push.fake.dead-token-rate:0}") double deadTokenRate,
+            @Value("${app.push.fake.max-per-second:0}") long maxPerSecond) {
+        this.latencyMillis = Math.max(latencyMillis, 0);
+        this.jitterMillis = Math.max(jitterMillis, 0);
+        this.failureRate = failureRate;
+        this.retryableRate = retryableRate;
+        this.deadTokenRate = deadTokenRate;
+        this.nanosPerMessage = maxPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxPerSecond : 0;
+        this.acceptedCounter = Counter.builder("hermnet.push.fake.accepted")
+                .description("Pushes accepted by the fake gateway")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Result> sendSync(List<String> tokens) {
+        throttle(tokens.size());
+        simulateLatency();
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            throw new PushGatewayException("Injected gateway failure");
+        }
+
+        List<Result> results = new ArrayList<>(tokens.size());
+        long delivered = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            double roll = random.nextDouble();
+            if (roll < deadTokenRate) {
+                results.add(Result.DEAD_TOKEN);
+            } else if (roll < deadTokenRate + retryableRate) {
+                results.add(Result.RETRYABLE);
+            } else {
+                results.add(Result.DELIVERED);
+                delivered++;
+            }
+        }
+        accepted.addAndGet(delivered);
+        acceptedCounter.increment(delivered);
+        return results;
+    }
+
+    /**
+     * @return Number of pushes reported as delivered since startup.
+     */
+    public long acceptedCount() {
+        return accepted.get();
+    }
+
+    private void throttle(int messages) {
+        if (nanosPerMessage == 0) {
+            return;
+        }
+        long cost = nanosPerMessage * messages;
+        long reservationEnd = nextFreeSlot.accumulateAndGet(cost, (free, c) -> Math.max(free, System.nanoTime()) + c);
+        long wait = reservationEnd - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private void simulateLatency() {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delay));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.hermnet.api.service;
+
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.google.firebase.messaging.SendResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link PushGateway} backed by Firebase Cloud Messaging {@code sendEach}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.push.gateway", havingValue = "fcm", matchIfMissing = true)
+public class FcmPushGateway implements PushGateway {
+
+    private static final String ACTION_KEY = "action";
+    private static final String ACTION_SYNC = "SYNC_REQUIRED";
+
+    private final ObjectProvider<FirebaseMessaging> firebaseMessaging;
+
+    public FcmPushGateway(ObjectProvider<FirebaseMessaging> firebaseMessaging) {
+        this.firebaseMessaging = firebaseMessaging;
+    }
+
+    @Override
+    public List<Result> sendSync(List<String> tokens) {
+        List<Message> messages = tokens.stream()
+                .map(token -> Message.builder()
+                        .setToken(token)
+                        .putData(ACTION_KEY, ACTION_SYNC)
+                        .build())
+                .toList();
+
+        BatchResponse response;
+        try {
+            response = firebaseMessaging.getObject().sendEach(messages);
+        } catch (FirebaseMessagingException e) {
+            throw new PushGatewayException("FCM sendEach failed: " + e.getMessagingErrorCode(), e);
+        }
+
+        List<Result> results = new ArrayList<>(tokens.size());
+        for (SendResponse sendResponse : response.getResponses()) {
+            results.add(toResult(sendResponse));
+        }
+        return results;
+    }
+
+    static Result toResult(SendResponse response) {
+        if (response.isSuccessful()) {
+            return Result.DELIVERED;
+        }
+        MessagingErrorCode code = response.getException() != null
+                ? response.getException().getMessagingErrorCode()
+                : null;
+        if (code == null) {
+            return Result.REJECTED;
+        }
+        return switch (code) {
+            case UNAVAILABLE, INTERNAL, QUOTA_EXCEEDED -> Result.RETRYABLE;
+            case UNREGISTERED, INVALID_ARGUMENT -> Result.DEAD_TOKEN;
+            default -> Result.REJECTED;
+        };
+    }
+}
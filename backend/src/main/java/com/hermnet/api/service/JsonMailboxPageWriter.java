@@ -0,0 +1,50 @@
+package com.hermnet.api.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes a sync page as
+ * {@code {"messages":[{"id","createdAt","payload"}...],"nextCursor","hasMore"}}.
+ * Payloads are Base64-encoded straight from the input stream, never buffered
+ * whole. Ids are written as strings: 64-bit values do not survive a
+ * JavaScript number.
+ */
+public class JsonMailboxPageWriter implements MailboxPageWriter {
+
+    private final JsonGenerator generator;
+
+    public JsonMailboxPageWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+        this.generator = objectMapper.createGenerator(out);
+    }
+
+    @Override
+    public void begin() throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("messages");
+    }
+
+    @Override
+    public void message(long id, LocalDateTime createdAt, long length, InputStream payload) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", Long.toString(id));
+        generator.writeObjectField("createdAt", createdAt);
+        generator.writeFieldName("payload");
+        generator.writeBinary(payload, Math.toIntExact(length));
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void end(String nextCursor, boolean hasMore) throws IOException {
+        generator.writeEndArray();
+        generator.writeStringField("nextCursor", nextCursor);
+        generator.writeBooleanField("hasMore", hasMore);
+        generator.writeEndObject();
+        generator.flush();
+    }
+}
@@ -0,0 +1,115 @@
+package com.hermnet.api.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Unlinks PostgreSQL large objects leaked by the former {@code @Lob} mapping
+ * of {@code mailbox.payload}.
+ *
+ * While payloads were {@code oid} columns, bulk deletes removed rows without
+ * calling {@code lo_unlink}, so their data stayed in {@code pg_largeobject}
+ * forever. Like {@code vacuumlo}, the job only unlinks large objects of the
+ * application role that no {@code oid} or {@code lo} column of any table in
+ * the database refers to, so large objects still in use elsewhere are kept.
+ * It does nothing until the payload column is {@code bytea}, and nothing on
+ * other databases.
+ */
+@Component
+@Slf4j
+public class LargeObjectReclaimer {
+
+    static final String PAYLOAD_TYPE_SQL = "SELECT data_type FROM information_schema.columns "
+            + "WHERE table_name = 'mailbox' AND column_name = 'payload'";
+
+    /** Every user column that can hold a large object reference (same filter as {@code vacuumlo}). */
+    static final String REFERENCE_COLUMNS_SQL = "SELECT s.nspname, c.relname, a.attname "
+            + "FROM pg_class c JOIN pg_namespace s ON s.oid = c.relnamespace "
+            + "JOIN pg_attribute a ON a.attrelid = c.oid JOIN pg_type t ON t.oid = a.atttypid "
+            + "WHERE a.attnum > 0 AND NOT a.attisdropped AND t.typname IN ('oid', 'lo') "
+            + "AND c.relkind IN ('r', 'm') AND s.nspname !~ '^pg_' AND s.nspname <> 'information_schema'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MaintenanceLock maintenanceLock;
+    private final TransactionTemplate batchTransaction;
+    private final int batchSize;
+
+    public LargeObjectReclaimer(JdbcTemplate jdbcTemplate, MaintenanceLock maintenanceLock,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.mailbox.lo-reclaim.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maintenanceLock = maintenanceLock;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    record ReferenceColumn(String schema, String table, String column) {
+    }
+
+    /** Nightly run, on one node only. */
+    @Scheduled(cron = "${app.mailbox.lo-reclaim.cron:0 30 3 * * *}")
+    public void scheduledReclaim() {
+        maintenanceLock.runExclusively("lo-reclaim", this::reclaimOrphans);
+    }
+
+    /**
+     * Unlinks orphaned large objects in batches until none are left. Each
+     * batch commits in its own transaction, even when called from inside
+     * another one, so a large backlog never holds one long transaction and a
+     * failure keeps the batches already done.
+     *
+     * @return Number of large objects unlinked.
+     */
+    public long reclaimOrphans() {
+        List<String> payloadType = jdbcTemplate.queryForList(PAYLOAD_TYPE_SQL, String.class);
+        if (payloadType.isEmpty() || !"bytea".equalsIgnoreCase(payloadType.get(0))) {
+            return 0;
+        }
+
+        List<ReferenceColumn> references = jdbcTemplate.query(REFERENCE_COLUMNS_SQL,
+                (rs, row) -> new ReferenceColumn(rs.getString(1), rs.getString(2), rs.getString(3)));
+        String unlinkBatchSql = unlinkBatchSql(references);
+
+        long unlinked = 0;
+        int batch;
+        do {
+            batch = batchTransaction.execute(
+                    status -> jdbcTemplate.queryForList(unlinkBatchSql, Integer.class, batchSize).size());
+            unlinked += batch;
+        } while (batch == batchSize);
+
+        if (unlinked > 0) {
+            log.info("Unlinked {} orphaned mailbox large objects", unlinked);
+        }
+        return unlinked;
+    }
+
+    /**
+     * Unlinks up to {@code ?} large objects of the current role that none of
+     * {@code references} points to.
+     */
+    static String unlinkBatchSql(List<ReferenceColumn> references) {
+        StringBuilder sql = new StringBuilder("SELECT lo_unlink(l.oid) FROM pg_largeobject_metadata l ")
+                .append("WHERE l.oid IN (SELECT m.oid FROM pg_largeobject_metadata m ")
+                .append("WHERE m.lomowner = (SELECT r.oid FROM pg_roles r WHERE r.rolname = current_user)");
+        for (ReferenceColumn reference : references) {
+            sql.append(" AND NOT EXISTS (SELECT 1 FROM ")
+                    .append(quote(reference.schema())).append('.').append(quote(reference.table()))
+                    .append(" x WHERE x.").append(quote(reference.column())).append(" = m.oid)");
+        }
+        return sql.append(" LIMIT ?)").toString();
+    }
+
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,47 @@
+package com.hermnet.api.service;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Opaque sync cursor handed to clients by {@code GET /api/messages/sync}.
+ *
+ * It encodes the id of the last message delivered. Clients must treat it as
+ * an opaque token so the encoding can change without breaking them.
+ */
+public final class MailboxCursor {
+
+    private MailboxCursor() {
+    }
+
+    public static String encode(long lastMessageId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(ByteBuffer.allocate(Long.BYTES).putLong(lastMessageId).array());
+    }
+
+    /**
+     * @param cursor Cursor previously returned by {@link #encode}; null or blank
+     *               means "from the start".
+     * @return Id of the last delivered message, 0 for the start.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public static long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        byte[] raw;
+        try {
+            raw = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+        if (raw.length != Long.BYTES) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+        long lastMessageId = ByteBuffer.wrap(raw).getLong();
+        if (lastMessageId < 0) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+        return lastMessageId;
+    }
+}
@@ -0,0 +1,201 @@
+package com.hermnet.api.service;
+
+import com.hermnet.api.dto.SendMessageRequest;
+import com.hermnet.api.repository.MailboxJdbcRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for the mailbox write path.
+ *
+ * Concurrent sends are queued and a single writer thread collects them for up
+ * to {@code linger-ms} (or until {@code max-batch} rows are waiting), then
+ * stores the whole group with one multi-row JDBC batch in one transaction.
+ * Under load this turns hundreds of single-row commits, each paying a WAL
+ * flush, into a few larger ones. Every caller's future completes only once
+ * its group is committed, so a 202 still means the message is durable. If
+ * the group's batch fails, its messages are retried one by one so a single
+ * bad row only fails its own caller.
+ *
+ * {@link MailboxService#sendBatch} does not go through this writer: a batch
+ * request is already one multi-row commit, and queueing its rows here would
+ * split it across groups and let part of it fail on its own.
+ *
+ * Enabled with {@code app.mailbox.group-commit.enabled=true}; without it
+ * {@link MailboxService} stores each message in its own transaction.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "app.mailbox.group-commit.enabled", havingValue = "true")
+public class MailboxGroupCommitter {
+
+    private final MailboxJdbcRepository mailboxJdbcRepository;
+    private final BlockingQueue<PendingInsert> queue;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+
+    private final DistributionSummary batchSizes;
+    private final Timer commitWait;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public MailboxGroupCommitter(
+            MailboxJdbcRepository mailboxJdbcRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.mailbox.group-commit.max-batch:256}") int maxBatchSize,
+            @Value("${app.mailbox.group-commit.linger-ms:2}") long lingerMillis,
+            @Value("${app.mailbox.group-commit.queue-capacity:10000}") int queueCapacity) {
+        this.mailboxJdbcRepository = mailboxJdbcRepository;
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(lingerMillis, 0));
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+
+        this.batchSizes = DistributionSummary.builder("hermnet.mailbox.group_commit.batch.size")
+                .description("Messages written per group commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.commitWait = Timer.builder("hermnet.mailbox.group_commit.wait")
+                .description("Time from submitting a message until its group is committed")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a message for the next group commit. Blocks while the queue is
+     * full, which pushes back on senders when the database falls behind.
+     *
+     * @return Future completed with the message's id once it is committed,
+     *         or exceptionally if its group failed to commit.
+     */
+    public CompletableFuture<Long> submit(SendMessageRequest message) {
+        PendingInsert pending = new PendingInsert(message, System.nanoTime(), new CompletableFuture<>());
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.done().completeExceptionally(e);
+        }
+        return pending.done();
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = Thread.ofPlatform().name("mailbox-group-commit").daemon().start(this::runLoop);
+    }
+
+    /**
+     * Stops the writer and commits whatever is still queued so no caller is
+     * left waiting on shutdown.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        List<PendingInsert> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += maxBatchSize) {
+            commit(remaining.subList(from, Math.min(from + maxBatchSize, remaining.size())));
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                List<PendingInsert> group = nextGroup();
+                if (!group.isEmpty()) {
+                    commit(group);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Blocks for the first pending message, then keeps collecting until the
+     * group is full or the linger time since the first message has elapsed.
+     */
+    private List<PendingInsert> nextGroup() throws InterruptedException {
+        PendingInsert first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+            return List.of();
+        }
+
+        List<PendingInsert> group = new ArrayList<>(maxBatchSize);
+        group.add(first);
+        long deadline = System.nanoTime() + lingerNanos;
+        while (group.size() < maxBatchSize) {
+            queue.drainTo(group, maxBatchSize - group.size());
+            long remaining = deadline - System.nanoTime();
+            if (group.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+            PendingInsert next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            group.add(next);
+        }
+        return group;
+    }
+
+    void commit(List<PendingInsert> group) {
+        batchSizes.record(group.size());
+        long[] ids;
+        try {
+            ids = mailboxJdbcRepository.insertBatch(group.stream().map(PendingInsert::message).toList());
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                log.warn("Mailbox insert failed: {}", e.getMessage());
+                group.get(0).done().completeExceptionally(e);
+                return;
+            }
+            // The batch transaction rolled back as a whole; find the rows that fail on their own.
+            log.warn("Group commit of {} messages failed, retrying them one by one: {}", group.size(),
+                    e.getMessage());
+            group.forEach(this::commitAlone);
+            return;
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < group.size(); i++) {
+            PendingInsert pending = group.get(i);
+            commitWait.record(now - pending.enqueuedAt(), TimeUnit.NANOSECONDS);
+            pending.done().complete(ids[i]);
+        }
+    }
+
+    private void commitAlone(PendingInsert pending) {
+        long id;
+        try {
+            id = mailboxJdbcRepository.insertBatch(List.of(pending.message()))[0];
+        } catch (RuntimeException e) {
+            pending.done().completeExceptionally(e);
+            return;
+        }
+        commitWait.record(System.nanoTime() - pending.enqueuedAt(), TimeUnit.NANOSECONDS);
+        pending.done().complete(id);
+    }
+
+    record PendingInsert(SendMessageRequest message, long enqueuedAt, CompletableFuture<Long> done) {
+    }
+}
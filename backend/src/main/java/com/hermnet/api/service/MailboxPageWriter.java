@@ -0,0 +1,25 @@
+package com.hermnet.api.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+
+/**
+ * Serializes one sync page incrementally, message by message, as rows come
+ * off the database cursor.
+ */
+public interface MailboxPageWriter {
+
+    void begin() throws IOException;
+
+    /**
+     * @param payload Stream of exactly {@code length} bytes, only valid during the call.
+     */
+    void message(long id, LocalDateTime createdAt, long length, InputStream payload) throws IOException;
+
+    /**
+     * @param nextCursor Cursor to continue from, null when nothing was ever delivered.
+     * @param hasMore    Whether the page was cut by the count or byte limit.
+     */
+    void end(String nextCursor, boolean hasMore) throws IOException;
+}
@@ -0,0 +1,247 @@
+package com.hermnet.api.service;
+
+import com.hermnet.api.model.Snowflake;
+import com.hermnet.api.repository.MailboxHotTier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps {@code mailbox} range-partitioned by {@code created_at}, one
+ * partition per hour (PostgreSQL only).
+ *
+ * Partitions are created {@code hours-ahead} in advance so inserts never
+ * wait on DDL, and retention detaches and drops whole expired partitions:
+ * purging an hour of messages is a catalog change instead of a DELETE that
+ * writes WAL and leaves dead tuples for autovacuum. A DEFAULT partition
+ * catches rows outside every range, should maintenance ever fall behind.
+ *
+ * Both run from one hourly job, at the top of the hour when the next hour
+ * of messages expires. {@code DETACH} takes an ACCESS EXCLUSIVE lock on
+ * {@code mailbox}, so it is kept out of the frequent retention purge; the
+ * non-blocking {@code DETACH ... CONCURRENTLY} is not an option because it
+ * refuses tables with a DEFAULT partition. Few hours ahead keep the number
+ * of partitions a query without a {@code created_at} bound has to visit low.
+ *
+ * On any other database, or while {@code mailbox} is still a plain table,
+ * every method is a no-op.
+ */
+@Component
+@Slf4j
+public class MailboxPartitionManager {
+
+    static final String RELKIND_SQL = "SELECT c.relkind FROM pg_catalog.pg_class c "
+            + "WHERE c.oid = to_regclass('mailbox')";
+
+    static final String PARTITIONS_SQL = "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) "
+            + "FROM pg_catalog.pg_inherits i JOIN pg_catalog.pg_class c ON c.oid = i.inhrelid "
+            + "WHERE i.inhparent = to_regclass('mailbox')";
+
+    static final String PRIMARY_KEY_SQL = "SELECT conname FROM pg_catalog.pg_constraint "
+            + "WHERE conrelid = to_regclass('mailbox_legacy') AND contype = 'p'";
+
+    static final String PARTITION_PREFIX = "mailbox_p";
+
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH");
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MaintenanceLock maintenanceLock;
+    private final int hoursAhead;
+    private final long retentionHours;
+    private final MailboxHotTier hotTier;
+
+    public MailboxPartitionManager(JdbcTemplate jdbcTemplate, MaintenanceLock maintenanceLock,
+            @Nullable MailboxHotTier hotTier,
+            @Value("${app.mailbox.partitions.hours-ahead:3}") int hoursAhead,
+            @Value("${app.privacy.data-retention.mailbox-hours:24}") long retentionHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maintenanceLock = maintenanceLock;
+        this.hotTier = hotTier;
+        this.hoursAhead = Math.max(hoursAhead, 1);
+        this.retentionHours = retentionHours;
+    }
+
+    /** An attached partition and the exclusive upper bound of its range, if it has one. */
+    record Partition(String name, Optional<LocalDateTime> upperBound) {
+    }
+
+    /**
+     * Converts a plain {@code mailbox} table into a partitioned one without
+     * copying rows: the old table becomes {@code mailbox_legacy}, attached as
+     * the partition for everything before the next hour, and is dropped by
+     * retention once all of it has expired.
+     *
+     * @return Whether the table was converted by this call.
+     */
+    public boolean partitionTable() {
+        if (!"r".equals(relkind())) {
+            return false;
+        }
+        LocalDateTime boundary = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusHours(1);
+
+        jdbcTemplate.execute("ALTER TABLE mailbox RENAME TO mailbox_legacy");
+        for (String pk : jdbcTemplate.queryForList(PRIMARY_KEY_SQL, String.class)) {
+            jdbcTemplate.execute("ALTER TABLE mailbox_legacy DROP CONSTRAINT " + pk);
+        }
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_mailbox_recipient_message "
+                + "RENAME TO idx_mailbox_legacy_recipient_message");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_mailbox_payload_hash "
+                + "RENAME TO idx_mailbox_legacy_payload_hash");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_mailbox_created_at "
+                + "RENAME TO idx_mailbox_legacy_created_at");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_mailbox_expires_at "
+                + "RENAME TO idx_mailbox_legacy_expires_at");
+
+        // The partition key has to be part of the primary key.
+        jdbcTemplate.execute("CREATE TABLE mailbox (LIKE mailbox_legacy INCLUDING DEFAULTS INCLUDING STORAGE) "
+                + "PARTITION BY RANGE (created_at)");
+        jdbcTemplate.execute("ALTER TABLE mailbox ADD PRIMARY KEY (message_id, created_at)");
+        jdbcTemplate.execute("CREATE INDEX idx_mailbox_recipient_message ON mailbox (recipient_hash, message_id)");
+        jdbcTemplate.execute("CREATE INDEX idx_mailbox_payload_hash ON mailbox (payload_hash)");
+        jdbcTemplate.execute("CREATE INDEX idx_mailbox_created_at ON mailbox (created_at)");
+        jdbcTemplate.execute("CREATE INDEX idx_mailbox_expires_at ON mailbox (expires_at)");
+        jdbcTemplate.execute("ALTER TABLE mailbox ATTACH PARTITION mailbox_legacy "
+                + "FOR VALUES FROM (MINVALUE) TO ('" + BOUND_FORMAT.format(boundary) + "')");
+        jdbcTemplate.execute("CREATE TABLE mailbox_default PARTITION OF mailbox DEFAULT");
+        log.info("Partitioned mailbox by created_at; existing rows kept in mailbox_legacy");
+
+        ensurePartitions();
+        return true;
+    }
+
+    /**
+     * Creates the hourly partitions missing between the newest existing one
+     * (or the current hour) and {@code hours-ahead} hours from now.
+     *
+     * @return Number of partitions created.
+     */
+    public int ensurePartitions() {
+        return ensurePartitions(LocalDateTime.now());
+    }
+
+    /**
+     * Hourly run, on one node only: creates the upcoming partitions and drops
+     * the ones past the retention window.
+     */
+    @Scheduled(cron = "${app.mailbox.partitions.cron:0 0 * * * *}")
+    public void scheduledMaintenance() {
+        maintenanceLock.runExclusively("mailbox-partitions", () -> {
+            LocalDateTime now = LocalDateTime.now();
+            ensurePartitions(now);
+            dropPartitionsBefore(now.minusHours(retentionHours));
+        });
+    }
+
+    int ensurePartitions(LocalDateTime now) {
+        if (!"p".equals(relkind())) {
+            return 0;
+        }
+        LocalDateTime from = now.truncatedTo(ChronoUnit.HOURS);
+        for (Partition partition : partitions()) {
+            if (partition.upperBound().isPresent() && partition.upperBound().get().isAfter(from)) {
+                from = partition.upperBound().get();
+            }
+        }
+
+        LocalDateTime until = now.truncatedTo(ChronoUnit.HOURS).plusHours(hoursAhead);
+        int created = 0;
+        for (LocalDateTime start = from; !start.isAfter(until); start = start.plusHours(1)) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + PARTITION_PREFIX + NAME_FORMAT.format(start)
+                    + " PARTITION OF mailbox FOR VALUES FROM ('" + BOUND_FORMAT.format(start)
+                    + "') TO ('" + BOUND_FORMAT.format(start.plusHours(1)) + "')");
+            created++;
+        }
+        if (created > 0) {
+            log.debug("Created {} mailbox partitions up to {}", created, until);
+        }
+        return created;
+    }
+
+    /**
+     * Detaches and drops every partition whose whole range lies before
+     * {@code cutoff}. Rows of the partition that straddles the cutoff are
+     * left to the regular DELETE of the retention purge, which partition
+     * pruning confines to that one partition.
+     *
+     * Dropped rows report no ids, so the hot tier forgets every payload whose
+     * id was minted before the newest dropped bound.
+     *
+     * @return Number of partitions dropped.
+     */
+    public int dropPartitionsBefore(LocalDateTime cutoff) {
+        if (!"p".equals(relkind())) {
+            return 0;
+        }
+        int dropped = 0;
+        LocalDateTime droppedUpTo = null;
+        for (Partition partition : partitions()) {
+            if (partition.upperBound().isEmpty() || partition.upperBound().get().isAfter(cutoff)) {
+                continue;
+            }
+            jdbcTemplate.execute("ALTER TABLE mailbox DETACH PARTITION " + partition.name());
+            jdbcTemplate.execute("DROP TABLE " + partition.name());
+            dropped++;
+            if (droppedUpTo == null || partition.upperBound().get().isAfter(droppedUpTo)) {
+                droppedUpTo = partition.upperBound().get();
+            }
+        }
+        if (dropped > 0) {
+            log.info("Dropped {} expired mailbox partitions", dropped);
+            if (hotTier != null) {
+                hotTier.removeOlderThan(
+                        Snowflake.firstIdAt(droppedUpTo.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * @return Whether {@code mailbox} is a PostgreSQL table that
+     *         {@link #partitionTable} would still convert.
+     */
+    public boolean isPlainTable() {
+        return "r".equals(relkind());
+    }
+
+    /**
+     * {@code r} for a plain table, {@code p} for a partitioned one, empty when
+     * there is no such table or the database is not PostgreSQL.
+     */
+    private String relkind() {
+        try {
+            List<String> kind = jdbcTemplate.queryForList(RELKIND_SQL, String.class);
+            return kind.isEmpty() || kind.get(0) == null ? "" : kind.get(0);
+        } catch (DataAccessException e) {
+            return "";
+        }
+    }
+
+    private List<Partition> partitions() {
+        return jdbcTemplate.query(PARTITIONS_SQL,
+                (rs, row) -> new Partition(rs.getString(1), upperBound(rs.getString(2))));
+    }
+
+    /** Parses the upper bound out of {@code FOR VALUES FROM (...) TO ('...')}; empty for DEFAULT. */
+    static Optional<LocalDateTime> upperBound(String expression) {
+        Matcher matcher = UPPER_BOUND.matcher(expression == null ? "" : expression);
+        if (!matcher.find()) {
+            return Optional.empty();
+        }
+        return Optional.of(LocalDateTime.parse(matcher.group(1).replace(' ', 'T')));
+    }
+}
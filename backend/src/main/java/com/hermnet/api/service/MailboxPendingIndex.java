@@ -0,0 +1,220 @@
+package com.hermnet.api.service;
+
+import com.hermnet.api.repository.MailboxDao;
+import com.hermnet.api.repository.MailboxSummary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory count of pending messages and the newest pending id per
+ * mailbox, so polls of an empty or unchanged mailbox are answered without a
+ * query.
+ *
+ * The index is rebuilt from one aggregate query at startup and kept current
+ * by {@link MailboxService}: every send increments the count and every ack
+ * decrements it. A mailbox found or left empty keeps an entry with a zero
+ * count, so polling it costs at most one query per {@code max-staleness-ms};
+ * {@link #pruneEmpty} drops those entries once they are stale, so besides the
+ * non-empty mailboxes the map only holds the empty ones polled lately.
+ *
+ * The ETag that {@code GET /api/messages} returns is the pair (count, newest
+ * id). Message ids only grow, so the pair changes whenever the set of pending
+ * messages does, and every node derives the same ETag from the same mailbox.
+ *
+ * Like {@link MailboxWaitRegistry}, it only sees what happens on this node.
+ * Messages sent or acked through another instance, expired by their TTL or
+ * removed by the retention purge become visible when an entry is older than
+ * {@code max-staleness-ms}: the next lookup re-counts that mailbox with one
+ * aggregate query. Changes whose outcome this node cannot tell (a send
+ * without its id, an ack of the newest message) force that re-count on the
+ * next lookup.
+ *
+ * Enabled with {@code app.mailbox.pending-index.enabled=true}.
+ */
+@Service
+@ConditionalOnProperty(name = "app.mailbox.pending-index.enabled", havingValue = "true")
+@Slf4j
+public class MailboxPendingIndex {
+
+    /** {@code verifiedAt} of an entry that must be checked against the database before use. */
+    private static final long UNVERIFIED = Long.MIN_VALUE;
+
+    private final MailboxDao mailboxDao;
+    private final long maxStalenessNanos;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Clock reading of the last rebuild, {@link #UNVERIFIED} before the first one. */
+    private volatile long rebuiltAt = UNVERIFIED;
+
+    private final Counter emptyLookups;
+    private final Counter pendingLookups;
+    private final Counter verifications;
+
+    @Autowired
+    public MailboxPendingIndex(MailboxDao mailboxDao, MeterRegistry meterRegistry,
+            @Value("${app.mailbox.pending-index.max-staleness-ms:10000}") long maxStalenessMillis) {
+        this(mailboxDao, meterRegistry, maxStalenessMillis, System::nanoTime);
+    }
+
+    MailboxPendingIndex(MailboxDao mailboxDao, MeterRegistry meterRegistry, long maxStalenessMillis,
+            LongSupplier nanoClock) {
+        this.mailboxDao = mailboxDao;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(maxStalenessMillis, 0));
+        this.nanoClock = nanoClock;
+
+        this.emptyLookups = Counter.builder("hermnet.mailbox.pending_index.lookups")
+                .description("Mailbox polls answered from the pending-count index")
+                .tag("result", "empty")
+                .register(meterRegistry);
+        this.pendingLookups = Counter.builder("hermnet.mailbox.pending_index.lookups")
+                .tag("result", "pending")
+                .register(meterRegistry);
+        this.verifications = Counter.builder("hermnet.mailbox.pending_index.verifications")
+                .description("Mailboxes re-counted because their entry was stale")
+                .register(meterRegistry);
+        Gauge.builder("hermnet.mailbox.pending_index.entries", entries, ConcurrentMap::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param count        Pending messages.
+     * @param maxMessageId Newest pending id, 0 when there are none.
+     * @param verifiedAt   Clock reading of the last database check.
+     */
+    private record Entry(long count, long maxMessageId, long verifiedAt) {
+    }
+
+    /**
+     * Loads the count of every non-empty mailbox; the others are known to be
+     * empty from here on. Changes made while the query runs are kept, and
+     * checked again on their next lookup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = nanoClock.getAsLong();
+        List<MailboxSummary> summaries;
+        try {
+            summaries = mailboxDao.summarizeMailboxes();
+        } catch (DataAccessException e) {
+            log.warn("Could not build the mailbox pending index, counting mailboxes on demand: {}", e.getMessage());
+            return;
+        }
+        for (MailboxSummary summary : summaries) {
+            entries.putIfAbsent(summary.recipientHash(), new Entry(summary.count(), summary.maxMessageId(), start));
+        }
+        rebuiltAt = start;
+        log.info("Mailbox pending index built: {} non-empty mailboxes", summaries.size());
+    }
+
+    /**
+     * @return true if the mailbox has no pending messages, so the caller can
+     *         skip the payload query.
+     */
+    public boolean isKnownEmpty(String recipientHash) {
+        boolean empty = current(recipientHash).count() == 0;
+        (empty ? emptyLookups : pendingLookups).increment();
+        return empty;
+    }
+
+    /**
+     * @return Strong ETag (quoted) for the current content of the mailbox.
+     */
+    public String etag(String recipientHash) {
+        Entry entry = current(recipientHash);
+        return "\"" + entry.count() + "." + Long.toString(entry.maxMessageId(), 36) + "\"";
+    }
+
+    /**
+     * A message was stored for the recipient on this node.
+     *
+     * @param messageId Id of the stored message, or 0 when the caller does
+     *                  not know it.
+     */
+    public void recordSend(String recipientHash, long messageId) {
+        entries.compute(recipientHash, (key, entry) -> {
+            Entry base = entry != null ? entry : absent();
+            return messageId > 0
+                    ? new Entry(base.count() + 1, Math.max(base.maxMessageId(), messageId), base.verifiedAt())
+                    : new Entry(base.count() + 1, base.maxMessageId(), UNVERIFIED);
+        });
+    }
+
+    /** Messages of the recipient were acknowledged on this node. */
+    public void recordAck(String recipientHash, Collection<Long> deletedIds) {
+        if (deletedIds.isEmpty()) {
+            return;
+        }
+        entries.compute(recipientHash, (key, entry) -> {
+            Entry base = entry != null ? entry : absent();
+            long left = base.count() - deletedIds.size();
+            if (left < 0) {
+                // More deletions than we counted: another node added messages we never saw.
+                return new Entry(0, base.maxMessageId(), UNVERIFIED);
+            }
+            if (left == 0) {
+                return new Entry(0, 0, base.verifiedAt());
+            }
+            // Without the newest message the new maximum is unknown until re-counted.
+            long verifiedAt = deletedIds.contains(base.maxMessageId()) ? UNVERIFIED : base.verifiedAt();
+            return new Entry(left, base.maxMessageId(), verifiedAt);
+        });
+    }
+
+    /**
+     * Drops the entries of empty mailboxes that are due for a re-count
+     * anyway, which keeps mailboxes polled once from staying in the map.
+     */
+    @Scheduled(fixedDelayString = "${app.mailbox.pending-index.max-staleness-ms:10000}")
+    public void pruneEmpty() {
+        long now = nanoClock.getAsLong();
+        entries.entrySet().removeIf(mapped -> mapped.getValue().count() == 0 && !isFresh(mapped.getValue(), now));
+    }
+
+    private Entry absent() {
+        return new Entry(0, 0, rebuiltAt);
+    }
+
+    private boolean isFresh(Entry entry, long now) {
+        return entry.verifiedAt() != UNVERIFIED && now - entry.verifiedAt() <= maxStalenessNanos;
+    }
+
+    private Entry current(String recipientHash) {
+        Entry mapped = entries.get(recipientHash);
+        Entry entry = mapped != null ? mapped : absent();
+        long now = nanoClock.getAsLong();
+        if (isFresh(entry, now)) {
+            return entry;
+        }
+
+        verifications.increment();
+        MailboxSummary summary = mailboxDao.summarizeMailbox(recipientHash)
+                .orElse(new MailboxSummary(recipientHash, 0, 0));
+        Entry counted = new Entry(summary.count(), summary.maxMessageId(), now);
+        entries.compute(recipientHash, (key, latest) -> {
+            if (latest != mapped) {
+                // Changed on this node while we were counting: keep it, check again next time.
+                return latest;
+            }
+            return counted;
+        });
+        return counted;
+    }
+}
@@ -0,0 +1,401 @@
+package com.hermnet.api.service;
+
+import com.hermnet.api.dto.SendMessageRequest;
+import com.hermnet.api.model.Message;
+import com.hermnet.api.model.User;
+import com.hermnet.api.repository.MailboxHotTier;
+import com.hermnet.api.repository.MailboxJdbcRepository;
+import com.hermnet.api.repository.MailboxDao;
+import com.hermnet.api.repository.PayloadBlobStore;
+import com.hermnet.api.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Mailbox operations shared by the REST and WebSocket transports.
+ *
+ * Storing a message also wakes parked readers of that mailbox and schedules
+ * the silent push that tells offline devices to sync.
+ */
+@Service
+@RequiredArgsConstructor
+public class MailboxService {
+
+    private final MailboxDao mailboxDao;
+    private final UserRepository userRepository;
+    private final NotificationService notificationService;
+    private final MailboxWaitRegistry mailboxWaitRegistry;
+    private final MailboxJdbcRepository mailboxJdbcRepository;
+    private final ObjectProvider<MailboxGroupCommitter> mailboxGroupCommitter;
+    private final PayloadBlobStore payloadBlobStore;
+    private final ObjectProvider<MailboxHotTier> mailboxHotTier;
+    private final ObjectProvider<MailboxPendingIndex> mailboxPendingIndex;
+
+    /** Mailbox reads in progress, by recipient; see {@link #listPayloads}. */
+    private final ConcurrentMap<String, CompletableFuture<List<byte[]>>> inFlightReads = new ConcurrentHashMap<>();
+
+    /**
+     * Stores an encrypted payload in the recipient's mailbox and notifies them.
+     *
+     * With {@link MailboxGroupCommitter} enabled the call blocks until the
+     * group holding this message is committed; otherwise the message is saved
+     * in its own transaction. Either way it is durable when this returns.
+     *
+     * @param recipientId Hashed id of the recipient.
+     * @param payload     Opaque encrypted payload.
+     * @param ttlSeconds  Optional sender-requested lifetime; null keeps the
+     *                    global retention window.
+     */
+    public void send(String recipientId, byte[] payload, Integer ttlSeconds) {
+        SendMessageRequest message = new SendMessageRequest(recipientId, payload, ttlSeconds);
+        MailboxGroupCommitter groupCommitter = mailboxGroupCommitter.getIfAvailable();
+        long savedId = 0;
+        if (groupCommitter != null) {
+            savedId = groupCommitter.submit(message).join();
+        } else {
+            PayloadBlobStore.StoredPayload stored = payloadBlobStore.store(payload);
+            Message saved = mailboxDao.save(Message.builder()
+                    .recipientHash(recipientId)
+                    .payload(stored.inline())
+                    .payloadHash(stored.hash())
+                    .payloadLength(stored.length())
+                    .expiresAt(message.expiresAt(LocalDateTime.now()))
+                    .build());
+            if (saved != null && saved.getMessageId() != null) {
+                savedId = saved.getMessageId();
+            }
+            MailboxHotTier hotTier = mailboxHotTier.getIfAvailable();
+            if (hotTier != null && savedId > 0 && stored.hash() == null) {
+                hotTier.put(savedId, stored.inline());
+            }
+        }
+
+        // Detach reads started before the send first: a poll that sees the new
+        // ETag must not pick up their older result.
+        inFlightReads.remove(recipientId);
+        MailboxPendingIndex index = mailboxPendingIndex.getIfAvailable();
+        if (index != null) {
+            index.recordSend(recipientId, savedId);
+        }
+        mailboxWaitRegistry.signal(recipientId);
+        userRepository.findById(recipientId)
+                .map(User::getPushToken)
+                .ifPresent(notificationService::sendSyncNotification);
+    }
+
+    public void send(String recipientId, byte[] payload) {
+        send(recipientId, payload, null);
+    }
+
+    /**
+     * Stores several encrypted payloads at once (e.g. one per group member).
+     *
+     * Rows go in with a single JDBC batch; recipients are looked up with one
+     * query and every distinct push token is handed to
+     * {@link NotificationService} in one pass, where the dispatcher folds them
+     * into the same FCM batch.
+     *
+     * The rows are written directly rather than through
+     * {@link MailboxGroupCommitter}: the request is already a single
+     * multi-row commit, and it either succeeds or fails as a whole.
+     *
+     * @param messages Recipient/payload pairs, already validated.
+     * @return Number of stored messages.
+     */
+    public int sendBatch(List<SendMessageRequest> messages) {
+        long[] ids = mailboxJdbcRepository.insertBatch(messages);
+
+        MailboxPendingIndex index = mailboxPendingIndex.getIfAvailable();
+        Set<String> recipients = new LinkedHashSet<>();
+        for (int i = 0; i < messages.size(); i++) {
+            String recipientId = messages.get(i).recipientId();
+            recipients.add(recipientId);
+            inFlightReads.remove(recipientId);
+            if (index != null) {
+                index.recordSend(recipientId, ids[i]);
+            }
+        }
+        recipients.forEach(mailboxWaitRegistry::signal);
+        userRepository.findAllById(recipients).stream()
+                .map(User::getPushToken)
+                .filter(Objects::nonNull)
+                .distinct()
+                .forEach(notificationService::sendSyncNotification);
+        return ids.length;
+    }
+
+    /**
+     * Returns the oldest pending messages newer than {@code afterId}.
+     *
+     * @param recipientHash Mailbox owner.
+     * @param afterId       Exclusive lower bound on the message id (0 = from the start).
+     * @param limit         Maximum number of messages.
+     * @return Messages in ascending id order, payloads loaded.
+     */
+    public List<Message> fetchAfter(String recipientHash, long afterId, int limit) {
+        List<Message> messages = mailboxDao.findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+                recipientHash, afterId, Limit.of(limit));
+        messages.forEach(this::loadStoredPayload);
+        return messages;
+    }
+
+    /**
+     * Returns every pending payload of the authenticated caller, newest first.
+     *
+     * With {@link MailboxPendingIndex} enabled, a mailbox the index knows to
+     * be empty is answered without touching the database. The index is only
+     * ever consulted for authenticated principals.
+     *
+     * @see #listPayloads
+     */
+    public List<byte[]> listOwnPayloads(String principal) {
+        MailboxPendingIndex index = mailboxPendingIndex.getIfAvailable();
+        if (index != null && index.isKnownEmpty(principal)) {
+            return List.of();
+        }
+        return listPayloads(principal);
+    }
+
+    /**
+     * Returns every pending payload of the recipient, newest first.
+     *
+     * Concurrent calls for the same recipient (two devices, or a poll and a
+     * manual refresh) share one query: the first caller runs it and the
+     * others wait for its result. Every send or ack for the recipient on this
+     * node detaches the read in progress, so a caller that arrives after a
+     * write never gets a result read before it.
+     */
+    public List<byte[]> listPayloads(String recipientHash) {
+        CompletableFuture<List<byte[]>> read = new CompletableFuture<>();
+        CompletableFuture<List<byte[]>> inFlight = inFlightReads.putIfAbsent(recipientHash, read);
+        if (inFlight != null) {
+            return joinRead(inFlight);
+        }
+        try {
+            List<byte[]> payloads = mailboxDao.findByRecipientHashOrderByCreatedAtDesc(recipientHash).stream()
+                    .map(this::payloadOf)
+                    .toList();
+            read.complete(payloads);
+            return payloads;
+        } catch (RuntimeException e) {
+            read.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightReads.remove(recipientHash, read);
+        }
+    }
+
+    private static List<byte[]> joinRead(CompletableFuture<List<byte[]>> read) {
+        try {
+            return read.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param principal Authenticated mailbox owner.
+     * @return ETag for the current content of the caller's mailbox, or null
+     *         when {@link MailboxPendingIndex} is disabled.
+     */
+    public String mailboxETag(String principal) {
+        MailboxPendingIndex index = mailboxPendingIndex.getIfAvailable();
+        return index != null ? index.etag(principal) : null;
+    }
+
+    private byte[] payloadOf(Message message) {
+        return message.getPayloadHash() != null ? payloadBlobStore.read(message.getPayloadHash()) : message.getPayload();
+    }
+
+    /**
+     * Replaces the empty inline payload of a file-backed message with the
+     * stored bytes. Only used on messages the repository returned outside any
+     * transaction, so the change is never written back.
+     */
+    private void loadStoredPayload(Message message) {
+        if (message.getPayloadHash() != null) {
+            message.setPayload(payloadBlobStore.read(message.getPayloadHash()));
+        }
+    }
+
+    /**
+     * Streams one page of an incremental mailbox sync to {@code writer}.
+     *
+     * Messages come back in ascending id order, at most {@code limit} of them
+     * and at most {@code maxBytes} of payload, read through a JDBC cursor on
+     * the {@code (recipient_hash, message_id)} index. Each payload is copied
+     * to the writer while its row is current, so the heap never holds more
+     * than one payload. A single message bigger than {@code maxBytes} is still
+     * sent alone, otherwise the client could never get past it.
+     *
+     * With {@link MailboxHotTier} enabled the page is first listed without
+     * payloads; if the tier holds every payload of the page, the bytes come
+     * from memory (at most {@code maxBytes}, or the one oversized message, on
+     * the heap at once) and the cursor scan is skipped.
+     *
+     * Messages with ids from {@code beforeId} on are held back and only
+     * reported through {@code hasMore}: ids are assigned before the row
+     * commits, so a cursor past a recent id could skip a lower one that
+     * commits later, and acknowledging up to that cursor would delete it.
+     *
+     * @param recipientHash Mailbox owner.
+     * @param afterId       Id decoded from the client's cursor (0 = from the start).
+     * @param beforeId      Commit-safety horizon: exclusive upper bound on the ids handed out.
+     * @param limit         Maximum number of messages (at least 1).
+     * @param maxBytes      Payload byte budget (at least 1).
+     * @param writer        Serializer bound to the response body.
+     */
+    public void streamPage(String recipientHash, long afterId, long beforeId, int limit, long maxBytes,
+            MailboxPageWriter writer) throws IOException {
+        MailboxHotTier hotTier = mailboxHotTier.getIfAvailable();
+        if (hotTier != null
+                && streamFromHotTier(hotTier, recipientHash, afterId, beforeId, limit, maxBytes, writer)) {
+            return;
+        }
+        PageProgress progress = new PageProgress(afterId);
+        writer.begin();
+        // One row beyond the limit tells whether more messages are pending.
+        mailboxJdbcRepository.scanAfter(recipientHash, afterId, limit + 1, (id, createdAt, length, payload) -> {
+            if (id >= beforeId || progress.count == limit
+                    || (progress.count > 0 && progress.bytes + length > maxBytes)) {
+                progress.hasMore = true;
+                return false;
+            }
+            writer.message(id, createdAt, length, payload);
+            progress.count++;
+            progress.bytes += length;
+            progress.lastId = id;
+            return true;
+        });
+        String nextCursor = progress.lastId > 0 ? MailboxCursor.encode(progress.lastId) : null;
+        writer.end(nextCursor, progress.hasMore);
+    }
+
+    /**
+     * Writes the page with payloads from {@code hotTier}, applying the same
+     * limits as the cursor scan.
+     *
+     * @return false, having written nothing, if some payload of the page is
+     *         file-backed or not cached.
+     */
+    private boolean streamFromHotTier(MailboxHotTier hotTier, String recipientHash, long afterId, long beforeId,
+            int limit, long maxBytes, MailboxPageWriter writer) throws IOException {
+        List<MailboxJdbcRepository.StoredMessage> rows = mailboxJdbcRepository.listAfter(recipientHash, afterId,
+                limit + 1);
+        List<byte[]> payloads = new ArrayList<>();
+        long bytes = 0;
+        boolean hasMore = false;
+        for (MailboxJdbcRepository.StoredMessage row : rows) {
+            if (row.messageId() >= beforeId || payloads.size() == limit
+                    || (!payloads.isEmpty() && bytes + row.length() > maxBytes)) {
+                hasMore = true;
+                break;
+            }
+            byte[] payload = row.payloadHash() == null ? hotTier.get(row.messageId()) : null;
+            if (payload == null) {
+                return false;
+            }
+            payloads.add(payload);
+            bytes += row.length();
+        }
+
+        writer.begin();
+        long lastId = afterId;
+        for (int i = 0; i < payloads.size(); i++) {
+            MailboxJdbcRepository.StoredMessage row = rows.get(i);
+            writer.message(row.messageId(), row.createdAt(), row.length(), new ByteArrayInputStream(payloads.get(i)));
+            lastId = row.messageId();
+        }
+        writer.end(lastId > 0 ? MailboxCursor.encode(lastId) : null, hasMore);
+        return true;
+    }
+
+    /**
+     * Acknowledges every message up to {@code afterId} and streams the page
+     * that follows it, atomically: if writing the page fails, the deletion is
+     * rolled back so the client can retry with the same cursor.
+     *
+     * Deleting by id range is only exact because {@link #streamPage} never
+     * hands out a cursor beyond its commit-safety horizon.
+     *
+     * @see #streamPage
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public void ackAndStreamPage(String recipientHash, long afterId, long beforeId, int limit, long maxBytes,
+            MailboxPageWriter writer) throws IOException {
+        List<Long> deleted = afterId > 0 ? mailboxJdbcRepository.deleteUpTo(recipientHash, afterId) : List.of();
+        streamPage(recipientHash, afterId, beforeId, limit, maxBytes, writer);
+        // Only once the page is out: a failed write rolls the deletion back.
+        recordAck(recipientHash, deleted);
+    }
+
+    /**
+     * Acknowledges exactly the given messages of the recipient.
+     *
+     * @param recipientHash Mailbox owner.
+     * @param messageIds    Ids the client has processed.
+     * @return The ids that were deleted; the others were already gone or are
+     *         not the recipient's.
+     */
+    public Set<Long> ackIds(String recipientHash, Collection<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return Set.of();
+        }
+        Set<Long> deleted = mailboxJdbcRepository.deleteByIds(recipientHash, messageIds);
+        recordAck(recipientHash, deleted);
+        return deleted;
+    }
+
+    /**
+     * Deletes every message of the recipient created at or before
+     * {@code cutoff}; a null cutoff deletes them all.
+     *
+     * @return number of deleted messages.
+     */
+    @Transactional
+    public long ackCreatedUpTo(String recipientHash, LocalDateTime cutoff) {
+        List<Long> deleted = mailboxJdbcRepository.deleteCreatedUpTo(recipientHash, cutoff);
+        recordAck(recipientHash, deleted);
+        return deleted.size();
+    }
+
+    private void recordAck(String recipientHash, Collection<Long> deleted) {
+        inFlightReads.remove(recipientHash);
+        MailboxPendingIndex index = mailboxPendingIndex.getIfAvailable();
+        if (index != null) {
+            index.recordAck(recipientHash, deleted);
+        }
+    }
+
+    private static final class PageProgress {
+
+        private int count;
+        private long bytes;
+        private long lastId;
+        private boolean hasMore;
+
+        private PageProgress(long afterId) {
+            this.lastId = afterId;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.hermnet.api.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory registry of parties waiting for new mail, keyed by recipient hash.
+ *
+ * {@code MessageController} parks long-poll requests here and signals the
+ * recipient after every stored message. Listeners run on virtual threads, so a
+ * sender never executes a waiter's mailbox query on its own request thread and
+ * a parked request costs no platform thread.
+ *
+ * Wake-ups are node-local: a message stored through another API instance only
+ * reaches waiters on this node via the waiter's timeout.
+ */
+@Service
+@Slf4j
+public class MailboxWaitRegistry {
+
+    private final ConcurrentMap<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final ExecutorService listenerExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public MailboxWaitRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("hermnet.mailbox.waiters", activeCount, AtomicInteger::get)
+                .description("Mailbox listeners currently parked")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers a listener that runs every time {@code recipientHash} receives
+     * mail, until the returned subscription is cancelled.
+     *
+     * @param recipientHash Mailbox to watch.
+     * @param listener      Callback, executed off the signalling thread.
+     * @return Handle used to stop listening.
+     */
+    public Subscription subscribe(String recipientHash, Runnable listener) {
+        Subscription subscription = new Subscription(recipientHash, listener);
+        subscriptions.compute(recipientHash, (key, listeners) -> {
+            Set<Subscription> target = listeners != null ? listeners : ConcurrentHashMap.newKeySet();
+            target.add(subscription);
+            return target;
+        });
+        activeCount.incrementAndGet();
+        return subscription;
+    }
+
+    /**
+     * Wakes every listener of the given mailbox.
+     *
+     * @param recipientHash Mailbox that just received mail.
+     */
+    public void signal(String recipientHash) {
+        Set<Subscription> listeners = subscriptions.get(recipientHash);
+        if (listeners == null) {
+            return;
+        }
+        for (Subscription subscription : listeners) {
+            listenerExecutor.execute(() -> {
+                try {
+                    subscription.listener.run();
+                } catch (RuntimeException e) {
+                    log.warn("Mailbox listener failed: {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    public int activeSubscriptions() {
+        return activeCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        listenerExecutor.shutdownNow();
+    }
+
+    private void remove(Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.recipientHash, (key, listeners) -> {
+            if (listeners.remove(subscription)) {
+                activeCount.decrementAndGet();
+            }
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    /**
+     * Handle returned by {@link #subscribe}. Cancelling is idempotent.
+     */
+    public final class Subscription {
+
+        private final String recipientHash;
+        private final Runnable listener;
+
+        private Subscription(String recipientHash, Runnable listener) {
+            this.recipientHash = recipientHash;
+            this.listener = listener;
+        }
+
+        public void cancel() {
+            remove(this);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.hermnet.api.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cluster-wide mutual exclusion for background maintenance, on PostgreSQL
+ * session-level advisory locks.
+ *
+ * Every API node schedules the same jobs; wrapping a job in
+ * {@link #runExclusively} makes the nodes whose cycle finds the lock taken
+ * skip that cycle instead of running the same deletes concurrently. The lock
+ * belongs to the database session that took it, so if the holding node dies
+ * its connection closes, PostgreSQL releases the lock and the next node to
+ * try takes over. No lease or heartbeat is involved.
+ *
+ * The gauge {@code hermnet.maintenance.lock.held} (tags {@code job},
+ * {@code node}) is 1 on the node currently running a job. On databases
+ * without advisory locks (H2 in tests) jobs simply run.
+ */
+@Component
+@Slf4j
+public class MaintenanceLock {
+
+    /** First half of every two-key advisory lock taken here ("HNET"). */
+    static final int LOCK_NAMESPACE = 0x484E4554;
+
+    static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_lock(?, ?)";
+    static final String UNLOCK_SQL = "SELECT pg_advisory_unlock(?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final String nodeId;
+    private final Map<String, JobMeters> meters = new ConcurrentHashMap<>();
+
+    public MaintenanceLock(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+            @Value("${app.ids.node-id:0}") long nodeId) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.nodeId = Long.toString(nodeId);
+    }
+
+    /**
+     * Runs {@code task} if no other node is running the job with the same
+     * name. The lock is held on a connection of its own for the duration of
+     * the task; the task's own statements use other connections.
+     *
+     * @param job  Name of the job; equal names exclude each other.
+     * @param task The job body.
+     * @return Whether the task ran on this node.
+     */
+    public boolean runExclusively(String job, Runnable task) {
+        JobMeters jobMeters = meters.computeIfAbsent(job, this::registerMeters);
+        Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+                task.run();
+                return true;
+            }
+            int key = job.hashCode();
+            if (!advisoryLock(connection, TRY_LOCK_SQL, key)) {
+                return false;
+            }
+            jobMeters.held.set(1);
+            try {
+                task.run();
+            } finally {
+                jobMeters.held.set(0);
+                advisoryLock(connection, UNLOCK_SQL, key);
+            }
+            return true;
+        });
+
+        boolean result = Boolean.TRUE.equals(ran);
+        (result ? jobMeters.ran : jobMeters.skipped).increment();
+        if (!result) {
+            log.debug("Skipped {}: running on another node", job);
+        }
+        return result;
+    }
+
+    private static boolean advisoryLock(Connection connection, String sql, int key) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, LOCK_NAMESPACE);
+            statement.setInt(2, key);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private JobMeters registerMeters(String job) {
+        AtomicInteger held = new AtomicInteger();
+        Gauge.builder("hermnet.maintenance.lock.held", held, AtomicInteger::get)
+                .description("1 while this node holds the job's advisory lock")
+                .tag("job", job)
+                .tag("node", nodeId)
+                .register(meterRegistry);
+        return new JobMeters(held, runCounter(job, "ran"), runCounter(job, "skipped"));
+    }
+
+    private Counter runCounter(String job, String result) {
+        return Counter.builder("hermnet.maintenance.runs")
+                .tag("job", job)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record JobMeters(AtomicInteger held, Counter ran, Counter skipped) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.hermnet.api.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link PushGateway} that reports every push as delivered without sending
+ * anything. Used in CI and on deployments without Firebase credentials.
+ */
+@Component
+@ConditionalOnProperty(name = "app.push.gateway", havingValue = "noop")
+public class NoopPushGateway implements PushGateway {
+
+    @Override
+    public List<Result> sendSync(List<String> tokens) {
+        return Collections.nCopies(tokens.size(), Result.DELIVERED);
+    }
+}
@@ -1,24 +1,63 @@
 package com.hermnet.api.service;
 
-import com.google.firebase.messaging.FirebaseMessaging;
-import com.google.firebase.messaging.Message;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sends silent "SYNC_REQUIRED" wake-ups to recipient devices.
+ *
+ * Every wake-up makes the device fetch its whole mailbox, so bursts addressed
+ * to the same token are coalesced: the first request in a window is sent
+ * immediately and any further requests inside that window collapse into a
+ * single trailing push fired when the window closes. A device therefore gets
+ * at most one wake-up per window and never misses the last message of a burst.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class NotificationService {
 
-    private static final String ACTION_KEY = "action";
-    private static final String ACTION_SYNC = "SYNC_REQUIRED";
+    private final PushBatchDispatcher pushBatchDispatcher;
+    private final TaskScheduler taskScheduler;
+    private final long coalesceWindowMillis;
+    private final ConcurrentMap<String, PushWindow> windows = new ConcurrentHashMap<>();
+    private final Counter sentCounter;
+    private final Counter coalescedCounter;
+
+    public NotificationService(
+            PushBatchDispatcher pushBatchDispatcher,
+            TaskScheduler taskScheduler,
+            MeterRegistry meterRegistry,
+            @Value("${app.push.coalesce-window-ms:2000}") long coalesceWindowMillis) {
+        this.pushBatchDispatcher = pushBatchDispatcher;
+        this.taskScheduler = taskScheduler;
+        this.coalesceWindowMillis = Math.max(coalesceWindowMillis, 0);
+        this.sentCounter = Counter.builder("hermnet.push.sync")
+                .tag("outcome", "sent")
+                .description("Silent sync pushes released to the FCM dispatcher")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("hermnet.push.sync")
+                .tag("outcome", "coalesced")
+                .description("Sync requests absorbed by an already open coalescing window")
+                .register(meterRegistry);
+    }
 
     /**
      * Sends a silent "Data-Only" push notification to the recipient.
      * This wakes up the app in the background without showing a visual alert
      * according to Zero-Knowledge principles.
-     * 
+     *
+     * Requests for a token that was pushed less than the coalescing window ago
+     * are folded into one trailing push at the end of that window.
+     *
      * @param recipientToken The FCM registration token of the recipient device.
      */
     public void sendSyncNotification(String recipientToken) {
@@ -27,17 +66,64 @@ public class NotificationService {
             return;
         }
 
-        try {
-            Message message = Message.builder()
-                    .setToken(recipientToken)
-                    .putData(ACTION_KEY, ACTION_SYNC)
-                    .build();
-
-            String response = FirebaseMessaging.getInstance().send(message);
-            log.info("Sent silent sync notification to token {}: {}",
-                    recipientToken.substring(0, Math.min(10, recipientToken.length())) + "...", response);
-        } catch (Exception e) {
-            log.error("Failed to send FCM notification to token {}", recipientToken, e);
+        if (coalesceWindowMillis == 0) {
+            deliver(recipientToken);
+            return;
         }
+
+        long now = System.currentTimeMillis();
+        Decision[] decision = new Decision[1];
+        PushWindow window = windows.compute(recipientToken, (token, current) -> {
+            if (current == null || now - current.openedAt() >= coalesceWindowMillis) {
+                decision[0] = Decision.SEND_NOW;
+                return new PushWindow(now, false);
+            }
+            decision[0] = current.trailingScheduled() ? Decision.ABSORBED : Decision.SCHEDULE_TRAILING;
+            return new PushWindow(current.openedAt(), true);
+        });
+
+        switch (decision[0]) {
+            case SEND_NOW -> deliver(recipientToken);
+            case SCHEDULE_TRAILING -> {
+                coalescedCounter.increment();
+                taskScheduler.schedule(() -> flushTrailing(recipientToken),
+                        Instant.ofEpochMilli(window.openedAt() + coalesceWindowMillis));
+            }
+            case ABSORBED -> coalescedCounter.increment();
+        }
+    }
+
+    /**
+     * Drops windows that closed without a pending trailing push so the map only
+     * holds tokens that were pushed recently.
+     */
+    @Scheduled(fixedDelayString = "${app.push.coalesce-sweep-ms:60000}")
+    public void evictClosedWindows() {
+        long now = System.currentTimeMillis();
+        windows.entrySet().removeIf(entry -> !entry.getValue().trailingScheduled()
+                && now - entry.getValue().openedAt() >= coalesceWindowMillis);
+    }
+
+    int openWindowCount() {
+        return windows.size();
+    }
+
+    private void flushTrailing(String recipientToken) {
+        // The trailing push opens the next window, so requests arriving right
+        // after it are coalesced again instead of producing a second wake-up.
+        windows.put(recipientToken, new PushWindow(System.currentTimeMillis(), false));
+        deliver(recipientToken);
+    }
+
+    private void deliver(String recipientToken) {
+        sentCounter.increment();
+        pushBatchDispatcher.enqueue(recipientToken);
+    }
+
+    private enum Decision {
+        SEND_NOW, SCHEDULE_TRAILING, ABSORBED
+    }
+
+    private record PushWindow(long openedAt, boolean trailingScheduled) {
     }
 }
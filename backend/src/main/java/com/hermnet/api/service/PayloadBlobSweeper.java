@@ -0,0 +1,60 @@
+package com.hermnet.api.service;
+
+import com.hermnet.api.repository.MailboxJdbcRepository;
+import com.hermnet.api.repository.PayloadBlobStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Removes payload files whose mailbox rows are gone.
+ *
+ * Acks and the retention purge only delete rows (in bulk, from several
+ * code paths); the files they referenced are reclaimed here afterwards.
+ * Deleting a file only after the row's deletion has committed means a crash
+ * at any point leaves at worst an orphan file for the next run, never a
+ * row without its payload. Runs on one node at a time, under
+ * {@link MaintenanceLock}, as the store's sweep requires.
+ */
+@Component
+@Slf4j
+public class PayloadBlobSweeper {
+
+    static final int HASH_BATCH_SIZE = 1000;
+
+    private final PayloadBlobStore payloadBlobStore;
+    private final MailboxJdbcRepository mailboxJdbcRepository;
+    private final MaintenanceLock maintenanceLock;
+    private final Duration grace;
+
+    public PayloadBlobSweeper(PayloadBlobStore payloadBlobStore, MailboxJdbcRepository mailboxJdbcRepository,
+            MaintenanceLock maintenanceLock,
+            @Value("${app.mailbox.blob-store.sweep-grace-minutes:10}") long graceMinutes) {
+        this.payloadBlobStore = payloadBlobStore;
+        this.mailboxJdbcRepository = mailboxJdbcRepository;
+        this.maintenanceLock = maintenanceLock;
+        this.grace = Duration.ofMinutes(Math.max(graceMinutes, 1));
+    }
+
+    @Scheduled(fixedDelayString = "${app.mailbox.blob-store.sweep-interval-ms:300000}")
+    public void scheduledSweep() {
+        maintenanceLock.runExclusively("blob-sweep", this::sweep);
+    }
+
+    public int sweep() {
+        try {
+            int deleted = payloadBlobStore.sweep(grace, HASH_BATCH_SIZE, mailboxJdbcRepository::referencedPayloadHashes);
+            if (deleted > 0) {
+                log.info("Deleted {} unreferenced mailbox payload files", deleted);
+            }
+            return deleted;
+        } catch (IOException e) {
+            log.warn("Mailbox payload sweep failed: {}", e.getMessage());
+            return 0;
+        }
+    }
+}
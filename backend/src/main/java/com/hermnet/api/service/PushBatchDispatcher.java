@@ -0,0 +1,320 @@
+package com.hermnet.api.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-batching stage between {@link NotificationService} and the configured
+ * {@link PushGateway} (FCM in production).
+ *
+ * Pushes are queued and a single worker thread drains them into batches of up
+ * to 500 messages (the FCM {@code sendEach} limit), waiting at most a few
+ * milliseconds for a batch to fill. Each per-message result is mapped back to
+ * its token: transient failures are re-queued with exponential backoff, dead
+ * tokens are handed to {@link PushTokenPruner} and the rest are counted and
+ * dropped. Every call goes through {@link PushCircuitBreaker}, so during an
+ * FCM outage batches are rejected immediately instead of waiting on timeouts;
+ * their tokens are queued again once the breaker is due to let a trial call
+ * through, so recipients still get their wake-up after the outage.
+ *
+ * Retries and deferred batches run on a scheduler owned by the dispatcher, so
+ * an FCM outage cannot fill the shared {@code @Scheduled} pool that the purge
+ * and the WebSocket expiry checks depend on.
+ */
+@Service
+@Slf4j
+public class PushBatchDispatcher {
+
+    static final int FCM_MAX_BATCH_SIZE = 500;
+
+    private final PushGateway pushGateway;
+    private final TaskScheduler taskScheduler;
+    private final PushCircuitBreaker circuitBreaker;
+    private final PushTokenPruner pushTokenPruner;
+    private final BlockingQueue<PendingPush> queue;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+
+    private final DistributionSummary batchSizes;
+    private final Counter delivered;
+    private final Counter retried;
+    private final Counter failed;
+    private final Counter dropped;
+    private final Counter rejected;
+    private final Counter deadTokens;
+
+    /** Set when the dispatcher created its scheduler and must shut it down. */
+    private ThreadPoolTaskScheduler ownScheduler;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    @Autowired
+    public PushBatchDispatcher(
+            PushGateway pushGateway,
+            PushCircuitBreaker circuitBreaker,
+            PushTokenPruner pushTokenPruner,
+            MeterRegistry meterRegistry,
+            @Value("${app.push.batch.max-size:500}") int maxBatchSize,
+            @Value("${app.push.batch.linger-ms:5}") long lingerMillis,
+            @Value("${app.push.queue-capacity:100000}") int queueCapacity,
+            @Value("${app.push.retry.max-attempts:3}") int maxAttempts,
+            @Value("${app.push.retry.backoff-ms:500}") long retryBackoffMillis,
+            @Value("${app.push.retry.scheduler-threads:1}") int schedulerThreads) {
+        this(pushGateway, retryScheduler(schedulerThreads), circuitBreaker, pushTokenPruner, meterRegistry,
+                maxBatchSize, lingerMillis, queueCapacity, maxAttempts, retryBackoffMillis);
+        this.ownScheduler = (ThreadPoolTaskScheduler) taskScheduler;
+    }
+
+    PushBatchDispatcher(
+            PushGateway pushGateway,
+            TaskScheduler taskScheduler,
+            PushCircuitBreaker circuitBreaker,
+            PushTokenPruner pushTokenPruner,
+            MeterRegistry meterRegistry,
+            @Value("${app.push.batch.max-size:500}") int maxBatchSize,
+            @Value("${app.push.batch.linger-ms:5}") long lingerMillis,
+            @Value("${app.push.queue-capacity:100000}") int queueCapacity,
+            @Value("${app.push.retry.max-attempts:3}") int maxAttempts,
+            @Value("${app.push.retry.backoff-ms:500}") long retryBackoffMillis) {
+        this.pushGateway = pushGateway;
+        this.taskScheduler = taskScheduler;
+        this.circuitBreaker = circuitBreaker;
+        this.pushTokenPruner = pushTokenPruner;
+        this.maxBatchSize = Math.min(Math.max(maxBatchSize, 1), FCM_MAX_BATCH_SIZE);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(lingerMillis, 0));
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.retryBackoffMillis = Math.max(retryBackoffMillis, 0);
+
+        this.batchSizes = DistributionSummary.builder("hermnet.push.batch.size")
+                .description("Pushes per gateway call")
+                .register(meterRegistry);
+        this.delivered = deliveryCounter(meterRegistry, "delivered");
+        this.retried = deliveryCounter(meterRegistry, "retried");
+        this.failed = deliveryCounter(meterRegistry, "failed");
+        this.dropped = deliveryCounter(meterRegistry, "dropped");
+        this.rejected = deliveryCounter(meterRegistry, "rejected");
+        this.deadTokens = deliveryCounter(meterRegistry, "dead_token");
+    }
+
+    private static ThreadPoolTaskScheduler retryScheduler(int threads) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(threads, 1));
+        scheduler.setThreadNamePrefix("push-retry-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    private static Counter deliveryCounter(MeterRegistry registry, String result) {
+        return Counter.builder("hermnet.push.delivery")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Queues a silent sync push for the given token without blocking the caller.
+     *
+     * @param token FCM registration token.
+     * @return false when the queue is full and the push was dropped.
+     */
+    public boolean enqueue(String token) {
+        return offer(new PendingPush(token, 1));
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = Thread.ofPlatform().name("push-dispatcher").daemon().start(this::runLoop);
+    }
+
+    /**
+     * Stops the worker and makes a last attempt to deliver whatever is still
+     * queued so a graceful shutdown does not lose wake-ups.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        List<PendingPush> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += maxBatchSize) {
+            dispatch(remaining.subList(from, Math.min(from + maxBatchSize, remaining.size())));
+        }
+        if (ownScheduler != null) {
+            ownScheduler.shutdown();
+        }
+    }
+
+    int pendingCount() {
+        return queue.size();
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                List<PendingPush> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    dispatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Push dispatcher iteration failed", e);
+            }
+        }
+    }
+
+    /**
+     * Blocks for the first pending push, then keeps collecting until the batch
+     * is full or the linger time since the first push has elapsed.
+     */
+    private List<PendingPush> nextBatch() throws InterruptedException {
+        PendingPush first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+            return List.of();
+        }
+
+        List<PendingPush> batch = new ArrayList<>(maxBatchSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+            PendingPush next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    void dispatch(List<PendingPush> batch) {
+        if (!circuitBreaker.allowRequest()) {
+            rejected.increment(batch.size());
+            deferUntilBreakerCloses(batch);
+            return;
+        }
+
+        batchSizes.record(batch.size());
+        List<String> tokens = batch.stream().map(PendingPush::token).toList();
+
+        List<PushGateway.Result> results;
+        try {
+            results = pushGateway.sendSync(tokens);
+        } catch (RuntimeException e) {
+            log.warn("Push gateway call with {} messages failed: {}", batch.size(), e.getMessage());
+            circuitBreaker.recordFailure();
+            batch.forEach(this::retryOrFail);
+            return;
+        }
+
+        List<String> dead = new ArrayList<>();
+        int transientFailures = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            PendingPush push = batch.get(i);
+            switch (results.get(i)) {
+                case DELIVERED -> delivered.increment();
+                case RETRYABLE -> {
+                    transientFailures++;
+                    retryOrFail(push);
+                }
+                case DEAD_TOKEN -> {
+                    deadTokens.increment();
+                    dead.add(push.token());
+                }
+                case REJECTED -> {
+                    failed.increment();
+                    log.warn("Push rejected for token {}", abbreviate(push.token()));
+                }
+            }
+        }
+
+        // A batch where every message hit a server-side error is an outage
+        // signal; anything else proves the provider is answering.
+        if (transientFailures == batch.size()) {
+            circuitBreaker.recordFailure();
+        } else {
+            circuitBreaker.recordSuccess();
+        }
+        pushTokenPruner.pruneAsync(dead);
+    }
+
+    /**
+     * Re-queues each distinct token of a rejected batch for when the breaker
+     * half-opens. The attempt count is kept: no call was made.
+     */
+    private void deferUntilBreakerCloses(List<PendingPush> batch) {
+        Map<String, PendingPush> distinct = new LinkedHashMap<>();
+        batch.forEach(push -> distinct.putIfAbsent(push.token(), push));
+        Instant due = Instant.now().plusMillis(Math.max(circuitBreaker.remainingOpenMillis(), 1));
+        try {
+            taskScheduler.schedule(() -> distinct.values().forEach(this::offer), due);
+        } catch (RejectedExecutionException e) {
+            // Shutting down: nothing will run the deferred pushes.
+            dropped.increment(distinct.size());
+        }
+    }
+
+    private void retryOrFail(PendingPush push) {
+        if (push.attempt() >= maxAttempts) {
+            failed.increment();
+            return;
+        }
+        long delay = retryBackoffMillis << (push.attempt() - 1);
+        PendingPush next = new PendingPush(push.token(), push.attempt() + 1);
+        try {
+            taskScheduler.schedule(() -> offer(next), Instant.now().plusMillis(delay));
+            retried.increment();
+        } catch (RejectedExecutionException e) {
+            // Shutting down: the retry would never run.
+            dropped.increment();
+        }
+    }
+
+    private boolean offer(PendingPush push) {
+        if (queue.offer(push)) {
+            return true;
+        }
+        dropped.increment();
+        log.warn("Push queue full, dropping wake-up for token {}", abbreviate(push.token()));
+        return false;
+    }
+
+    private static String abbreviate(String token) {
+        return token.substring(0, Math.min(10, token.length())) + "...";
+    }
+
+    record PendingPush(String token, int attempt) {
+    }
+}
@@ -0,0 +1,117 @@
+package com.hermnet.api.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker guarding the FCM client.
+ *
+ * After {@code failureThreshold} consecutive failed calls the breaker opens and
+ * every push is rejected immediately for {@code openDuration}, so a Google
+ * outage costs no threads waiting on HTTP timeouts. Once that period elapses a
+ * single trial call is let through (half-open): success closes the breaker,
+ * failure opens it again.
+ *
+ * The current state is published as the {@code hermnet.push.circuit.state}
+ * gauge (0 = closed, 1 = half-open, 2 = open).
+ */
+@Component
+@Slf4j
+public class PushCircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    @Autowired
+    public PushCircuitBreaker(
+            MeterRegistry meterRegistry,
+            @Value("${app.push.circuit.failure-threshold:5}") int failureThreshold,
+            @Value("${app.push.circuit.open-seconds:30}") long openSeconds) {
+        this(meterRegistry, failureThreshold, openSeconds, System::nanoTime);
+    }
+
+    PushCircuitBreaker(MeterRegistry meterRegistry, int failureThreshold, long openSeconds, LongSupplier nanoClock) {
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.openDurationNanos = TimeUnit.SECONDS.toNanos(Math.max(openSeconds, 1));
+        this.nanoClock = nanoClock;
+        Gauge.builder("hermnet.push.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("FCM circuit breaker state (0 closed, 1 half-open, 2 open)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return true when a call to FCM may be attempted right now.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openDurationNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+            log.info("FCM circuit breaker half-open, allowing a trial call");
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (trialInFlight) {
+                    yield false;
+                }
+                trialInFlight = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("FCM circuit breaker closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("FCM circuit breaker opened after {} consecutive failures", consecutiveFailures);
+            }
+            state = State.OPEN;
+            openedAt = nanoClock.getAsLong();
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * @return Milliseconds until an open breaker lets a trial call through; 0
+     *         when it is not open.
+     */
+    public synchronized long remainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        long remaining = openDurationNanos - (nanoClock.getAsLong() - openedAt);
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(remaining), 0);
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+}
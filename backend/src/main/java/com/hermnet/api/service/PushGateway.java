@@ -0,0 +1,37 @@
+package com.hermnet.api.service;
+
+import java.util.List;
+
+/**
+ * Transport used by {@link PushBatchDispatcher} to deliver silent sync pushes.
+ *
+ * Implementations are selected with {@code app.push.gateway}:
+ * {@code fcm} (default) talks to Firebase Cloud Messaging, {@code noop}
+ * accepts everything without network access and {@code fake} simulates FCM
+ * with configurable latency, failures and throughput for load tests.
+ */
+public interface PushGateway {
+
+    /**
+     * Outcome of a single push inside a batch.
+     */
+    enum Result {
+        /** Accepted by the provider. */
+        DELIVERED,
+        /** Provider-side transient error; the push may be retried. */
+        RETRYABLE,
+        /** Token is no longer valid and should be forgotten. */
+        DEAD_TOKEN,
+        /** Permanent failure unrelated to the token itself. */
+        REJECTED
+    }
+
+    /**
+     * Sends one silent "SYNC_REQUIRED" push per token in a single call.
+     *
+     * @param tokens Device registration tokens (at most 500).
+     * @return Results aligned index-by-index with {@code tokens}.
+     * @throws PushGatewayException If the call as a whole failed.
+     */
+    List<Result> sendSync(List<String> tokens);
+}
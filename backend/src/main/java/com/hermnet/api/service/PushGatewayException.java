@@ -0,0 +1,16 @@
+package com.hermnet.api.service;
+
+/**
+ * Raised by a {@link PushGateway} when a whole batch could not be delivered
+ * (network error, provider outage, injected fault).
+ */
+public class PushGatewayException extends RuntimeException {
+
+    public PushGatewayException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public PushGatewayException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,54 @@
+package com.hermnet.api.service;
+
+import com.hermnet.api.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Clears push tokens that FCM reported as permanently invalid
+ * ({@code UNREGISTERED} / {@code INVALID_ARGUMENT}) so later messages to that
+ * user no longer pay for a doomed HTTP call. The update runs off the push
+ * dispatcher thread; until the device registers a new token it relies on
+ * polling.
+ */
+@Service
+@Slf4j
+public class PushTokenPruner {
+
+    private final UserRepository userRepository;
+    private final TaskScheduler taskScheduler;
+    private final Counter prunedCounter;
+
+    public PushTokenPruner(UserRepository userRepository, TaskScheduler taskScheduler, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.taskScheduler = taskScheduler;
+        this.prunedCounter = Counter.builder("hermnet.push.tokens.pruned")
+                .description("Push tokens cleared after FCM reported them dead")
+                .register(meterRegistry);
+    }
+
+    public void pruneAsync(Collection<String> deadTokens) {
+        if (deadTokens.isEmpty()) {
+            return;
+        }
+        List<String> tokens = List.copyOf(deadTokens);
+        taskScheduler.schedule(() -> prune(tokens), Instant.now());
+    }
+
+    void prune(List<String> tokens) {
+        try {
+            int cleared = userRepository.clearPushTokens(tokens);
+            prunedCounter.increment(cleared);
+            log.info("Cleared {} dead push tokens", cleared);
+        } catch (RuntimeException e) {
+            log.warn("Could not clear {} dead push tokens: {}", tokens.size(), e.getMessage());
+        }
+    }
+}
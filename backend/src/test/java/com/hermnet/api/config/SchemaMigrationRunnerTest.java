@@ -0,0 +1,73 @@
+package com.hermnet.api.config;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.hermnet.api.service.LargeObjectReclaimer;
+import com.hermnet.api.service.MailboxPartitionManager;
+
+@ExtendWith(MockitoExtension.class)
+class SchemaMigrationRunnerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private LargeObjectReclaimer largeObjectReclaimer;
+
+    @Mock
+    private MailboxPartitionManager mailboxPartitionManager;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class))).thenReturn(false);
+        lenient().when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of("oid"));
+    }
+
+    private SchemaMigrationRunner runner(boolean offline) {
+        return new SchemaMigrationRunner(jdbcTemplate, transactionManager, largeObjectReclaimer,
+                mailboxPartitionManager, offline);
+    }
+
+    @Test
+    void run_LeavesOfflineConversionsAloneByDefault() {
+        runner(false).run();
+
+        verify(jdbcTemplate).execute("DROP INDEX IF EXISTS idx_mailbox_recipient");
+        verify(jdbcTemplate, never()).execute("ALTER TABLE mailbox ALTER COLUMN payload TYPE bytea USING lo_get(payload)");
+        verify(largeObjectReclaimer, never()).reclaimOrphans();
+        verify(mailboxPartitionManager, never()).partitionTable();
+    }
+
+    @Test
+    void run_CommitsEveryStepOnItsOwnAndKeepsGoingAfterAFailure() {
+        lenient().doThrow(new IllegalStateException("lock timeout")).when(jdbcTemplate)
+                .execute("ALTER TABLE mailbox ALTER COLUMN payload TYPE bytea USING lo_get(payload)");
+
+        runner(true).run();
+
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, times(4)).commit(any());
+        verify(largeObjectReclaimer).reclaimOrphans();
+        verify(mailboxPartitionManager).partitionTable();
+    }
+}
@@ -0,0 +1,139 @@
+package com.hermnet.api.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.firebase.FirebaseApp;
+import com.hermnet.api.dto.SendMessageRequest;
+import com.hermnet.api.repository.JdbcMailboxDao;
+import com.hermnet.api.repository.MailboxDao;
+import com.hermnet.api.repository.MailboxHotTier;
+import com.hermnet.api.security.JwtTokenProvider;
+import com.hermnet.api.service.MailboxGroupCommitter;
+import com.hermnet.api.service.MailboxPendingIndex;
+
+/**
+ * Runs a message through the mailbox endpoints with the flags production
+ * enables, which the test properties otherwise leave off: group commit, the
+ * JDBC fast path, the hot tier and the pending index. The commit window is
+ * zero so a message can be synced right after it is sent.
+ */
+@SpringBootTest(properties = {
+        "app.mailbox.group-commit.enabled=true",
+        "app.mailbox.jdbc-fast-path.enabled=true",
+        "app.mailbox.hot-tier.enabled=true",
+        "app.mailbox.hot-tier.max-bytes=1048576",
+        "app.mailbox.pending-index.enabled=true",
+        "app.mailbox.sync.commit-window-ms=0" })
+@AutoConfigureMockMvc
+class MailboxProductionFlagsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JwtTokenProvider jwtTokenProvider;
+
+    @Autowired
+    private MailboxDao mailboxDao;
+
+    @Autowired
+    private MailboxHotTier hotTier;
+
+    @Autowired
+    private MailboxGroupCommitter groupCommitter;
+
+    @Autowired
+    private MailboxPendingIndex pendingIndex;
+
+    @MockBean(name = "firebaseApp")
+    private FirebaseApp firebaseApp;
+
+    private MockHttpServletRequestBuilder as(String token, MockHttpServletRequestBuilder request) {
+        return request.header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+    }
+
+    private JsonNode sync(String token, String cursor) throws Exception {
+        MockHttpServletRequestBuilder request = as(token, post("/api/messages/sync"));
+        if (cursor != null) {
+            request.param("cursor", cursor);
+        }
+        MvcResult started = mockMvc.perform(request).andExpect(request().asyncStarted()).andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+
+    @Test
+    void sendSyncAck_ThenAnUnchangedPollIsNotModified() throws Exception {
+        assertInstanceOf(JdbcMailboxDao.class, mailboxDao);
+        assertNotNull(groupCommitter);
+        assertNotNull(pendingIndex);
+        String me = "HNET-FLAGS-" + UUID.randomUUID();
+        String token = jwtTokenProvider.generateToken(me);
+
+        mockMvc.perform(as(token, post("/api/messages"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new SendMessageRequest(me, new byte[] { 1, 2, 3 }))))
+                .andExpect(status().isAccepted());
+
+        String pending = mockMvc.perform(as(token, get("/api/messages")).param("myId", me))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(as(token, get("/api/messages")).param("myId", me)
+                .header(HttpHeaders.IF_NONE_MATCH, pending))
+                .andExpect(status().isNotModified());
+
+        JsonNode page = sync(token, null);
+        assertEquals(1, page.get("messages").size());
+        assertEquals("AQID", page.get("messages").get(0).get("payload").asText());
+        long id = Long.parseLong(page.get("messages").get(0).get("id").asText());
+        assertNotNull(hotTier.get(id));
+
+        JsonNode acked = sync(token, page.get("nextCursor").asText());
+        assertEquals(0, acked.get("messages").size());
+        assertNull(hotTier.get(id));
+
+        String empty = mockMvc.perform(as(token, get("/api/messages")).param("myId", me)
+                .header(HttpHeaders.IF_NONE_MATCH, pending))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("\"0.0\"", empty);
+        mockMvc.perform(as(token, get("/api/messages")).param("myId", me)
+                .header(HttpHeaders.IF_NONE_MATCH, empty))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""))
+                .andExpect(header().string(HttpHeaders.ETAG, empty));
+    }
+}
@@ -0,0 +1,270 @@
+package com.hermnet.api.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hermnet.api.model.Message;
+import com.hermnet.api.model.Snowflake;
+import com.hermnet.api.security.JwtHandshakeInterceptor;
+import com.hermnet.api.security.JwtTokenProvider;
+import com.hermnet.api.service.MailboxService;
+import com.hermnet.api.service.MailboxWaitRegistry;
+import com.hermnet.api.service.TokenBlacklistService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class MailboxWebSocketHandlerTest {
+
+    private static final String ME = "HNET-ME";
+
+    @Mock
+    private MailboxService mailboxService;
+
+    @Mock
+    private MailboxWaitRegistry mailboxWaitRegistry;
+
+    @Mock
+    private JwtTokenProvider jwtTokenProvider;
+
+    @Mock
+    private TokenBlacklistService tokenBlacklistService;
+
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    @Mock
+    private WebSocketSession session;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final List<JsonNode> sent = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private MailboxWebSocketHandler handler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        handler = new MailboxWebSocketHandler(mailboxService, mailboxWaitRegistry, jwtTokenProvider,
+                tokenBlacklistService, taskScheduler, objectMapper, meterRegistry, 2, 1_000, 64 * 1024, 2, 60, 256, 2_000);
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(JwtHandshakeInterceptor.PRINCIPAL_ATTRIBUTE, ME);
+        attributes.put(JwtHandshakeInterceptor.EXPIRES_AT_ATTRIBUTE, Instant.now().plusSeconds(900));
+        lenient().when(session.getId()).thenReturn("session-1");
+        lenient().when(session.getAttributes()).thenReturn(attributes);
+        lenient().when(session.isOpen()).thenReturn(true);
+        lenient().doAnswer(invocation -> {
+            WebSocketMessage<?> frame = invocation.getArgument(0);
+            sent.add(objectMapper.readTree((String) frame.getPayload()));
+            return null;
+        }).when(session).sendMessage(any());
+        lenient().when(mailboxWaitRegistry.subscribe(anyString(), any()))
+                .thenReturn(mock(MailboxWaitRegistry.Subscription.class));
+    }
+
+    private static Message message(long id) {
+        return Message.builder().messageId(id).recipientHash(ME).payload(new byte[] { (byte) id }).build();
+    }
+
+    private void receive(String json) throws Exception {
+        handler.handleMessage(session, new TextMessage(json));
+    }
+
+    @Test
+    void connect_DeliversPendingMessagesUpToInitialCredits() {
+        when(mailboxService.fetchAfter(ME, 0L, 2)).thenReturn(List.of(message(1), message(2)));
+
+        handler.afterConnectionEstablished(session);
+
+        assertEquals(2, sent.size());
+        assertEquals("message", sent.get(0).get("type").asText());
+        assertEquals(2, sent.get(1).get("id").asLong());
+        assertEquals(1, handler.openConnections());
+        assertEquals(1.0, meterRegistry.get("hermnet.ws.connections").gauge().value());
+    }
+
+    @Test
+    void credit_ResumesDeliveryAfterLastDeliveredId() throws Exception {
+        when(mailboxService.fetchAfter(ME, 0L, 2)).thenReturn(List.of(message(1), message(2)));
+        when(mailboxService.fetchAfter(ME, 2L, 5)).thenReturn(List.of(message(3)));
+        handler.afterConnectionEstablished(session);
+
+        receive("{\"type\":\"credit\",\"credits\":5}");
+
+        assertEquals(3, sent.size());
+        assertEquals(3, sent.get(2).get("id").asLong());
+    }
+
+    @Test
+    void signal_PushesNewMailToConnectedClient() {
+        when(mailboxService.fetchAfter(ME, 0L, 2)).thenReturn(List.of(), List.of(message(7)));
+        handler.afterConnectionEstablished(session);
+
+        ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(mailboxWaitRegistry).subscribe(eq(ME), listener.capture());
+        listener.getValue().run();
+
+        assertEquals(1, sent.size());
+        assertEquals(7, sent.get(0).get("id").asLong());
+    }
+
+    @Test
+    void credit_DeliversAMessageThatCommittedBelowOneAlreadyPushed() throws Exception {
+        long young = Snowflake.firstIdAt(System.currentTimeMillis()) + 10;
+        long late = young - 5;
+        when(mailboxService.fetchAfter(ME, 0L, 2)).thenReturn(List.of(message(1), message(young)));
+        // The cursor stops at 1: young is inside the commit window.
+        when(mailboxService.fetchAfter(ME, 1L, 3)).thenReturn(List.of(message(late), message(young)));
+        handler.afterConnectionEstablished(session);
+
+        receive("{\"type\":\"credit\",\"credits\":2}");
+
+        assertEquals(List.of(1L, young, late), sent.stream().map(frame -> frame.get("id").asLong()).toList());
+    }
+
+    @Test
+    void sendAndAck_AreConfirmedWithClientRef() throws Exception {
+        when(mailboxService.fetchAfter(ME, 0L, 2)).thenReturn(List.of(message(40), message(42)));
+        when(mailboxService.ackIds(ME, List.of(40L, 42L))).thenReturn(Set.of(40L, 42L));
+        handler.afterConnectionEstablished(session);
+        sent.clear();
+
+        receive("{\"type\":\"send\",\"ref\":\"a\",\"recipientId\":\"HNET-BOB\",\"payload\":\"AQID\"}");
+        receive("{\"type\":\"ack\",\"ref\":\"b\",\"upTo\":42}");
+
+        verify(mailboxService).send(eq("HNET-BOB"), any(byte[].class), isNull());
+        assertEquals("sent", sent.get(0).get("type").asText());
+        assertEquals("a", sent.get(0).get("ref").asText());
+        assertEquals("acked", sent.get(1).get("type").asText());
+        assertEquals(2, sent.get(1).get("deleted").asLong());
+        assertEquals(1, meterRegistry.get("hermnet.ws.frame.latency").tag("type", "ack").timer().count());
+    }
+
+    @Test
+    void ack_RemovesOnlyMessagesDeliveredOnTheConnection() throws Exception {
+        when(mailboxService.fetchAfter(ME, 0L, 2)).thenReturn(List.of(message(5), message(9)));
+        when(mailboxService.ackIds(eq(ME), any())).thenReturn(Set.of());
+        handler.afterConnectionEstablished(session);
+
+        // id 7 committed after 9 was delivered: acking up to 9 must leave it alone.
+        receive("{\"type\":\"ack\",\"ref\":\"b\",\"upTo\":8}");
+        receive("{\"type\":\"ack\",\"ref\":\"c\",\"upTo\":9}");
+
+        verify(mailboxService).ackIds(ME, List.of(5L));
+        verify(mailboxService).ackIds(ME, List.of(9L));
+    }
+
+    @Test
+    void send_BeyondTheConnectionBudget_IsRejected() throws Exception {
+        when(mailboxService.fetchAfter(anyString(), anyLong(), anyInt())).thenReturn(List.of());
+        handler.afterConnectionEstablished(session);
+
+        for (String ref : List.of("a", "b", "c")) {
+            receive("{\"type\":\"send\",\"ref\":\"" + ref + "\",\"recipientId\":\"HNET-BOB\",\"payload\":\"AQID\"}");
+        }
+
+        verify(mailboxService, times(2)).send(eq("HNET-BOB"), any(byte[].class), isNull());
+        assertEquals("sent", sent.get(1).get("type").asText());
+        assertEquals("error", sent.get(2).get("type").asText());
+        assertEquals("c", sent.get(2).get("ref").asText());
+    }
+
+    @Test
+    void malformedFrame_IsAnsweredWithError() throws Exception {
+        when(mailboxService.fetchAfter(anyString(), anyLong(), anyInt())).thenReturn(List.of());
+        handler.afterConnectionEstablished(session);
+
+        receive("not json");
+        receive("{\"type\":\"send\",\"ref\":\"x\"}");
+
+        assertEquals("error", sent.get(0).get("type").asText());
+        assertEquals("error", sent.get(1).get("type").asText());
+        assertEquals("x", sent.get(1).get("ref").asText());
+    }
+
+    @Test
+    void partialFrames_AreJoinedBeforeParsing() throws Exception {
+        when(mailboxService.fetchAfter(anyString(), anyLong(), anyInt())).thenReturn(List.of());
+        handler.afterConnectionEstablished(session);
+
+        handler.handleMessage(session, new TextMessage("{\"type\":\"send\",\"ref\":\"a\",", false));
+        handler.handleMessage(session, new TextMessage("\"recipientId\":\"HNET-BOB\",", false));
+        assertEquals(0, sent.size());
+        handler.handleMessage(session, new TextMessage("\"payload\":\"AQID\"}", true));
+
+        verify(mailboxService).send(eq("HNET-BOB"), eq(new byte[] { 1, 2, 3 }), isNull());
+        assertEquals("sent", sent.get(0).get("type").asText());
+    }
+
+    @Test
+    void oversizedFrame_ClosesConnectionWith1009() throws Exception {
+        when(mailboxService.fetchAfter(anyString(), anyLong(), anyInt())).thenReturn(List.of());
+        handler.afterConnectionEstablished(session);
+
+        handler.handleMessage(session, new TextMessage("x".repeat(200), false));
+        handler.handleMessage(session, new TextMessage("x".repeat(200), true));
+
+        verify(session).close(CloseStatus.TOO_BIG_TO_PROCESS);
+        verify(mailboxService, never()).send(anyString(), any(), any());
+        assertEquals(0, sent.size());
+    }
+
+    @Test
+    void expiredToken_ClosesConnectionWith4401() throws Exception {
+        when(mailboxService.fetchAfter(anyString(), anyLong(), anyInt())).thenReturn(List.of());
+        session.getAttributes().put(JwtHandshakeInterceptor.EXPIRES_AT_ATTRIBUTE, Instant.now().minusSeconds(1));
+        handler.afterConnectionEstablished(session);
+
+        ArgumentCaptor<Runnable> expiryCheck = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).schedule(expiryCheck.capture(), any(Instant.class));
+        expiryCheck.getValue().run();
+
+        verify(session).close(MailboxWebSocketHandler.TOKEN_EXPIRED);
+    }
+
+    @Test
+    void close_CancelsSubscription() {
+        MailboxWaitRegistry.Subscription subscription = mock(MailboxWaitRegistry.Subscription.class);
+        when(mailboxWaitRegistry.subscribe(anyString(), any())).thenReturn(subscription);
+        when(mailboxService.fetchAfter(anyString(), anyLong(), anyInt())).thenReturn(List.of());
+        handler.afterConnectionEstablished(session);
+
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+        verify(subscription, atLeastOnce()).cancel();
+        assertEquals(0, handler.openConnections());
+    }
+}
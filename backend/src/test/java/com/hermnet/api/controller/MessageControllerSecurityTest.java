@@ -6,10 +6,14 @@ import com.hermnet.api.config.RateLimitFilter;
 import com.hermnet.api.dto.SendMessageRequest;
 import com.hermnet.api.security.JwtAuthenticationFilter;
 import com.hermnet.api.security.JwtTokenProvider;
+import com.hermnet.api.repository.MailboxJdbcRepository;
 import com.hermnet.api.repository.MessageRepository;
+import com.hermnet.api.repository.PayloadBlobStore;
 import com.hermnet.api.model.Message;
 import com.hermnet.api.config.IpAnonymizationFilter;
 import com.hermnet.api.repository.UserRepository;
+import com.hermnet.api.service.MailboxService;
+import com.hermnet.api.service.MailboxWaitRegistry;
 import com.hermnet.api.service.NotificationService;
 import com.hermnet.api.service.TokenBlacklistService;
 import io.jsonwebtoken.Claims;
@@ -34,7 +38,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(MessageController.class)
-@Import({ SecurityConfig.class, JwtAuthenticationFilter.class })
+@Import({ SecurityConfig.class, JwtAuthenticationFilter.class, MailboxService.class, PayloadBlobStore.class })
 public class MessageControllerSecurityTest {
 
     @Autowired
@@ -49,6 +53,12 @@ public class MessageControllerSecurityTest {
     @MockBean
     private NotificationService notificationService;
 
+    @MockBean
+    private MailboxWaitRegistry mailboxWaitRegistry;
+
+    @MockBean
+    private MailboxJdbcRepository mailboxJdbcRepository;
+
     @MockBean
     private JwtTokenProvider jwtTokenProvider;
 
@@ -4,38 +4,65 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hermnet.api.config.RateLimitFilter;
 import com.hermnet.api.dto.SendMessageRequest;
 import com.hermnet.api.model.Message;
+import com.hermnet.api.repository.MailboxJdbcRepository;
 import com.hermnet.api.repository.MessageRepository;
+import com.hermnet.api.repository.PayloadBlobStore;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.hermnet.api.model.User;
 import com.hermnet.api.repository.UserRepository;
+import com.hermnet.api.service.MailboxCursor;
+import com.hermnet.api.service.MailboxPendingIndex;
+import com.hermnet.api.service.MailboxService;
+import com.hermnet.api.service.MailboxWaitRegistry;
 import com.hermnet.api.service.NotificationService;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import org.junit.jupiter.api.AfterEach;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import java.util.Collections;
 
 @WebMvcTest(MessageController.class)
 @AutoConfigureMockMvc(addFilters = false)
+@Import({ MailboxService.class, PayloadBlobStore.class })
 public class MessageControllerTest {
 
     @Autowired
@@ -50,6 +77,15 @@ public class MessageControllerTest {
     @MockBean
     private NotificationService notificationService;
 
+    @MockBean
+    private MailboxWaitRegistry mailboxWaitRegistry;
+
+    @MockBean
+    private MailboxJdbcRepository mailboxJdbcRepository;
+
+    @MockBean
+    private MailboxPendingIndex mailboxPendingIndex;
+
     @MockBean
     private com.hermnet.api.security.JwtTokenProvider jwtTokenProvider;
 
@@ -121,14 +157,14 @@ public class MessageControllerTest {
     public void ackMessages_ShouldDeleteAll_WhenCutoffMissing() throws Exception {
         String userId = "HNET-USER-1";
         authenticateAs(userId);
-        when(messageRepository.deleteByRecipientHash(userId)).thenReturn(3L);
+        when(mailboxJdbcRepository.deleteCreatedUpTo(userId, null)).thenReturn(List.of(1L, 2L, 3L));
 
         mockMvc.perform(post("/api/messages/ack")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.deleted").value(3));
 
-        verify(messageRepository).deleteByRecipientHash(userId);
+        verify(mailboxJdbcRepository).deleteCreatedUpTo(userId, null);
     }
 
     @Test
@@ -136,8 +172,8 @@ public class MessageControllerTest {
         String userId = "HNET-USER-2";
         String cutoff = "2026-04-15T10:00:00";
         authenticateAs(userId);
-        when(messageRepository.deleteByRecipientHashAndCreatedAtLessThanEqual(
-                eq(userId), any(LocalDateTime.class))).thenReturn(2L);
+        when(mailboxJdbcRepository.deleteCreatedUpTo(eq(userId), any(LocalDateTime.class)))
+                .thenReturn(List.of(1L, 2L));
 
         mockMvc.perform(post("/api/messages/ack")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -145,8 +181,7 @@ public class MessageControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.deleted").value(2));
 
-        verify(messageRepository).deleteByRecipientHashAndCreatedAtLessThanEqual(
-                eq(userId), any(LocalDateTime.class));
+        verify(mailboxJdbcRepository).deleteCreatedUpTo(eq(userId), any(LocalDateTime.class));
     }
 
     @Test
@@ -162,4 +197,347 @@ public class MessageControllerTest {
                 .param("myId", myId))
                 .andExpect(status().isOk());
     }
+
+    @Test
+    public void getMessages_ShouldReturnETag_AndBodyWhenClientCopyIsOutdated() throws Exception {
+        String myId = "HNET-VALID";
+        authenticateAs(myId);
+        when(mailboxPendingIndex.etag(myId)).thenReturn("\"3.7\"");
+        when(messageRepository.findByRecipientHashOrderByCreatedAtDesc(myId))
+                .thenReturn(List.of(Message.builder().payload(new byte[] { 1 }).build()));
+
+        mockMvc.perform(get("/api/messages")
+                .param("myId", myId)
+                .header("If-None-Match", "\"3.6\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3.7\""))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    public void getMessages_ShouldReturn304WithoutPayloadQuery_WhenETagMatches() throws Exception {
+        String myId = "HNET-VALID";
+        authenticateAs(myId);
+        when(mailboxPendingIndex.etag(myId)).thenReturn("\"3.7\"");
+
+        mockMvc.perform(get("/api/messages")
+                .param("myId", myId)
+                .header("If-None-Match", "\"3.5\", W/\"3.7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"3.7\""))
+                .andExpect(content().string(""));
+
+        verify(messageRepository, never()).findByRecipientHashOrderByCreatedAtDesc(any());
+    }
+
+    @Test
+    public void getMessages_ShouldNotConsultThePendingIndex_ForAnotherUsersId() throws Exception {
+        authenticateAs("HNET-VALID");
+        when(messageRepository.findByRecipientHashOrderByCreatedAtDesc("HNET-OTHER")).thenReturn(List.of());
+
+        mockMvc.perform(get("/api/messages")
+                .param("myId", "HNET-OTHER")
+                .header("If-None-Match", "\"0.0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"));
+
+        verifyNoInteractions(mailboxPendingIndex);
+    }
+
+    @Test
+    public void sendMessage_ShouldWakeLongPollWaiters() throws Exception {
+        SendMessageRequest request = new SendMessageRequest("HNET-VALID", new byte[] { 1, 2, 3 });
+
+        mockMvc.perform(post("/api/messages")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted());
+
+        verify(mailboxWaitRegistry).signal("HNET-VALID");
+    }
+
+    @Test
+    public void awaitMessages_ShouldAnswerImmediately_WhenMailboxHasMessages() throws Exception {
+        String myId = "HNET-VALID";
+        when(mailboxWaitRegistry.subscribe(eq(myId), any(Runnable.class)))
+                .thenReturn(mock(MailboxWaitRegistry.Subscription.class));
+        when(messageRepository.findByRecipientHashOrderByCreatedAtDesc(myId))
+                .thenReturn(List.of(Message.builder().payload(new byte[] { 7 }).build()));
+
+        MvcResult result = mockMvc.perform(get("/api/messages")
+                .param("myId", myId)
+                .param("waitSeconds", "20"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    public void awaitMessages_ShouldCompleteWhenRecipientIsSignalled() throws Exception {
+        String myId = "HNET-VALID";
+        when(mailboxWaitRegistry.subscribe(eq(myId), any(Runnable.class)))
+                .thenReturn(mock(MailboxWaitRegistry.Subscription.class));
+        when(messageRepository.findByRecipientHashOrderByCreatedAtDesc(myId))
+                .thenReturn(List.of())
+                .thenReturn(List.of(Message.builder().payload(new byte[] { 9 }).build()));
+
+        MvcResult result = mockMvc.perform(get("/api/messages")
+                .param("myId", myId)
+                .param("waitSeconds", "20"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        ArgumentCaptor<Runnable> wakeUp = ArgumentCaptor.forClass(Runnable.class);
+        verify(mailboxWaitRegistry).subscribe(eq(myId), wakeUp.capture());
+        wakeUp.getValue().run();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    public void syncMessages_ShouldStreamPageWithCursor() throws Exception {
+        String userId = "HNET-USER-3";
+        authenticateAs(userId);
+        doAnswer(invocation -> {
+            MailboxJdbcRepository.RowVisitor visitor = invocation.getArgument(3);
+            visitor.visit(5L, LocalDateTime.parse("2026-04-15T10:00:00"), 3, new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+            return null;
+        }).when(mailboxJdbcRepository).scanAfter(eq(userId), eq(4L), eq(11), any());
+
+        MvcResult result = mockMvc.perform(get("/api/messages/sync")
+                .param("cursor", MailboxCursor.encode(4L))
+                .param("limit", "10"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(1))
+                .andExpect(jsonPath("$.messages[0].id").value("5"))
+                .andExpect(jsonPath("$.messages[0].payload").value("AQID"))
+                .andExpect(jsonPath("$.nextCursor").value(MailboxCursor.encode(5L)))
+                .andExpect(jsonPath("$.hasMore").value(false));
+    }
+
+    @Test
+    public void syncMessages_ShouldReturn400_WhenCursorIsMalformed() throws Exception {
+        authenticateAs("HNET-USER-3");
+
+        mockMvc.perform(get("/api/messages/sync")
+                .param("cursor", "not-a-cursor!"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void sendRawMessage_ShouldStoreOctetStreamBodyAsIs() throws Exception {
+        byte[] payload = new byte[] { 0, 1, 2, (byte) 0xFF };
+
+        mockMvc.perform(post("/api/messages")
+                .param("recipientId", "HNET-VALID")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content(payload))
+                .andExpect(status().isAccepted());
+
+        ArgumentCaptor<Message> saved = ArgumentCaptor.forClass(Message.class);
+        verify(messageRepository).save(saved.capture());
+        assertArrayEquals(payload, saved.getValue().getPayload());
+        verify(mailboxWaitRegistry).signal("HNET-VALID");
+    }
+
+    @Test
+    public void sendMessage_ShouldStoreExpiry_WhenTtlRequested() throws Exception {
+        SendMessageRequest request = new SendMessageRequest("HNET-VALID", new byte[] { 1, 2, 3 }, 60);
+        LocalDateTime before = LocalDateTime.now();
+
+        mockMvc.perform(post("/api/messages")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted());
+
+        ArgumentCaptor<Message> saved = ArgumentCaptor.forClass(Message.class);
+        verify(messageRepository).save(saved.capture());
+        LocalDateTime expiresAt = saved.getValue().getExpiresAt();
+        assertFalse(expiresAt.isBefore(before.plusSeconds(60)));
+        assertFalse(expiresAt.isAfter(LocalDateTime.now().plusSeconds(60)));
+    }
+
+    @Test
+    public void sendMessage_ShouldReturn400_WhenTtlIsNotPositive() throws Exception {
+        SendMessageRequest request = new SendMessageRequest("HNET-VALID", new byte[] { 1, 2, 3 }, 0);
+
+        mockMvc.perform(post("/api/messages")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/api/messages")
+                .param("recipientId", "HNET-VALID")
+                .param("ttlSeconds", "-5")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content(new byte[] { 1 }))
+                .andExpect(status().isBadRequest());
+        verify(messageRepository, never()).save(any(Message.class));
+    }
+
+    @Test
+    public void sendRawMessage_ShouldReturn400_WhenBodyIsEmpty() throws Exception {
+        mockMvc.perform(post("/api/messages")
+                .param("recipientId", "HNET-VALID")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content(new byte[0]))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void syncMessages_ShouldStreamLengthPrefixedFrames_WhenClientAcceptsOctetStream() throws Exception {
+        String userId = "HNET-USER-4";
+        authenticateAs(userId);
+        doAnswer(invocation -> {
+            MailboxJdbcRepository.RowVisitor visitor = invocation.getArgument(3);
+            visitor.visit(8L, LocalDateTime.now(), 2, new ByteArrayInputStream(new byte[] { 4, 2 }));
+            return null;
+        }).when(mailboxJdbcRepository).scanAfter(eq(userId), eq(0L), eq(101), any());
+
+        MvcResult result = mockMvc.perform(get("/api/messages/sync")
+                .accept(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        assertEquals(8L, in.readLong());
+        in.readLong();
+        assertEquals(2, in.readInt());
+        assertArrayEquals(new byte[] { 4, 2 }, in.readNBytes(2));
+        assertEquals(0L, in.readLong());
+        assertEquals(0, in.readByte());
+        byte[] cursor = in.readNBytes(in.readShort());
+        assertEquals(MailboxCursor.encode(8L), new String(cursor, StandardCharsets.US_ASCII));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void ackAndSyncMessages_ShouldAckUpToCursorAndStreamNextPage() throws Exception {
+        String userId = "HNET-USER-5";
+        authenticateAs(userId);
+        doAnswer(invocation -> {
+            MailboxJdbcRepository.RowVisitor visitor = invocation.getArgument(3);
+            visitor.visit(13L, LocalDateTime.now(), 1, new ByteArrayInputStream(new byte[] { 1 }));
+            return null;
+        }).when(mailboxJdbcRepository).scanAfter(eq(userId), eq(12L), eq(11), any());
+
+        MvcResult result = mockMvc.perform(post("/api/messages/sync")
+                .param("cursor", MailboxCursor.encode(12L))
+                .param("limit", "10"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[0].id").value("13"))
+                .andExpect(jsonPath("$.nextCursor").value(MailboxCursor.encode(13L)));
+
+        verify(mailboxJdbcRepository).deleteUpTo(userId, 12L);
+    }
+
+    @Test
+    public void ackAndSyncMessages_ShouldNotAckOnFirstSync() throws Exception {
+        authenticateAs("HNET-USER-5");
+
+        MvcResult result = mockMvc.perform(post("/api/messages/sync"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(0));
+
+        verify(mailboxJdbcRepository, never()).deleteUpTo(any(), anyLong());
+    }
+
+    @Test
+    public void ackMessages_ShouldDeleteExactIds_AndReportMissingOnes() throws Exception {
+        String userId = "HNET-USER-6";
+        authenticateAs(userId);
+        when(mailboxJdbcRepository.deleteByIds(eq(userId), any())).thenReturn(Set.of(101L));
+
+        mockMvc.perform(post("/api/messages/ack")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"message_ids\":[101,102]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(1))
+                .andExpect(jsonPath("$.missing_ids[0]").value("102"));
+
+        verify(mailboxJdbcRepository).deleteByIds(userId, List.of(101L, 102L));
+        verify(mailboxJdbcRepository, never()).deleteCreatedUpTo(any(), any());
+    }
+
+    @Test
+    public void ackMessages_ShouldNotWipeMailbox_WhenIdListIsEmpty() throws Exception {
+        authenticateAs("HNET-USER-6");
+
+        mockMvc.perform(post("/api/messages/ack")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"message_ids\":[]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(0));
+
+        verify(mailboxJdbcRepository, never()).deleteCreatedUpTo(any(), any());
+    }
+
+    @Test
+    public void ackMessages_ShouldReturn400_WhenAnIdIsNotPositive() throws Exception {
+        authenticateAs("HNET-USER-7");
+
+        mockMvc.perform(post("/api/messages/ack")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"message_ids\":[101,-9223372036854775808]}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/messages/ack")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"message_ids\":[0]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(mailboxJdbcRepository, never()).deleteByIds(any(), any());
+    }
+
+    @Test
+    public void sendMessages_ShouldInsertBatchAndNotifyEachRecipientOnce() throws Exception {
+        User member = new User();
+        member.setPushToken("member-token");
+        when(mailboxJdbcRepository.insertBatch(any())).thenReturn(new long[] { 1, 2, 3 });
+        when(userRepository.findAllById(any())).thenReturn(List.of(member));
+
+        mockMvc.perform(post("/api/messages/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"messages\":[{\"recipientId\":\"HNET-A\",\"payload\":\"AQ==\"},"
+                        + "{\"recipientId\":\"HNET-B\",\"payload\":\"Ag==\"},"
+                        + "{\"recipientId\":\"HNET-A\",\"payload\":\"Aw==\"}]}"))
+                .andExpect(status().isAccepted());
+
+        verify(mailboxJdbcRepository).insertBatch(any());
+        verify(mailboxWaitRegistry).signal("HNET-A");
+        verify(mailboxWaitRegistry).signal("HNET-B");
+        verify(notificationService).sendSyncNotification("member-token");
+        verify(messageRepository, never()).save(any());
+    }
+
+    @Test
+    public void sendMessages_ShouldReturn400_WhenAnyEntryIsInvalid() throws Exception {
+        mockMvc.perform(post("/api/messages/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"messages\":[{\"recipientId\":\"HNET-A\",\"payload\":\"AQ==\"},"
+                        + "{\"recipientId\":\"\",\"payload\":\"Ag==\"}]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(mailboxJdbcRepository, never()).insertBatch(any());
+    }
 }
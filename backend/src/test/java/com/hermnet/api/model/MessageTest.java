@@ -54,11 +54,12 @@ public class MessageTest {
         byte[] payload = new byte[] { 10, 20, 30 };
         LocalDateTime now = LocalDateTime.now();
 
-        Message msg = new Message(id, recipientHash, payload, now);
+        Message msg = new Message(id, recipientHash, payload, null, null, now, null);
 
         assertEquals(id, msg.getMessageId());
         assertEquals(recipientHash, msg.getRecipientHash());
         assertArrayEquals(payload, msg.getPayload());
+        assertNull(msg.getPayloadHash());
         assertEquals(now, msg.getCreatedAt());
     }
 
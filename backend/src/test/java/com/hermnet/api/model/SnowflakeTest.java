@@ -0,0 +1,119 @@
+package com.hermnet.api.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the Snowflake id generator.
+ *
+ * Verifies bit layout, uniqueness under concurrent generation and behaviour
+ * when the sequence overflows or the clock steps backwards.
+ */
+public class SnowflakeTest {
+
+    private static final long NOW = Snowflake.EPOCH_MILLIS + 1_000_000L;
+
+    @Test
+    public void testIdEncodesTimestampAndNode() {
+        Snowflake snowflake = new Snowflake(42, () -> NOW);
+
+        long id = snowflake.nextId();
+
+        assertEquals(NOW, Snowflake.timestampOf(id));
+        assertEquals(42, Snowflake.nodeOf(id));
+        assertTrue(id > 0, "Sign bit must stay clear");
+    }
+
+    @Test
+    public void testIdsAreUniqueAcrossThreads() throws Exception {
+        Snowflake snowflake = new Snowflake(1);
+        int threads = 8;
+        int perThread = 50_000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Callable<long[]> task = () -> {
+                    start.await();
+                    long[] ids = new long[perThread];
+                    for (int i = 0; i < perThread; i++) {
+                        ids[i] = snowflake.nextId();
+                    }
+                    return ids;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+
+            Set<Long> all = new HashSet<>();
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get();
+                for (int i = 0; i < ids.length; i++) {
+                    if (i > 0) {
+                        assertTrue(ids[i] > ids[i - 1], "Ids seen by one thread must increase");
+                    }
+                    all.add(ids[i]);
+                }
+            }
+            assertEquals(threads * perThread, all.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSequenceOverflowCarriesIntoNextMillisecond() {
+        Snowflake snowflake = new Snowflake(0, () -> NOW);
+
+        long previous = 0;
+        for (int i = 0; i < 4096; i++) {
+            previous = snowflake.nextId();
+        }
+        long overflow = snowflake.nextId();
+
+        assertTrue(overflow > previous);
+        assertEquals(NOW, Snowflake.timestampOf(previous));
+        assertEquals(NOW + 1, Snowflake.timestampOf(overflow));
+    }
+
+    @Test
+    public void testClockGoingBackwardsKeepsIdsIncreasing() {
+        AtomicLong clock = new AtomicLong(NOW);
+        Snowflake snowflake = new Snowflake(0, clock::get);
+
+        long before = snowflake.nextId();
+        clock.set(NOW - 5_000);
+        long after = snowflake.nextId();
+
+        assertTrue(after > before);
+    }
+
+    @Test
+    public void testRejectsNodeIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new Snowflake(-1));
+        assertThrows(IllegalArgumentException.class, () -> new Snowflake(Snowflake.MAX_NODE_ID + 1));
+    }
+
+    @Test
+    public void testFirstIdAtBoundsEveryNodeAndSequence() {
+        long first = new Snowflake(0, () -> NOW).nextId();
+        long last = new Snowflake(Snowflake.MAX_NODE_ID, () -> NOW - 1).nextId();
+
+        assertEquals(first, Snowflake.firstIdAt(NOW));
+        assertTrue(last < Snowflake.firstIdAt(NOW));
+        assertEquals(NOW, Snowflake.timestampOf(Snowflake.firstIdAt(NOW)));
+    }
+}
@@ -0,0 +1,169 @@
+package com.hermnet.api.repository;
+
+import com.hermnet.api.config.IdGeneratorConfig;
+import com.hermnet.api.model.Message;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the {@link MessageRepositoryTest} scenarios, plus the mailbox counts,
+ * against both {@link MailboxDao} implementations and checks that the JDBC
+ * fast path behaves exactly like the Hibernate repository.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ JdbcMailboxDao.class, IdGeneratorConfig.class })
+@TestPropertySource(properties = "app.mailbox.jdbc-fast-path.enabled=true")
+public class JdbcMailboxDaoTest {
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private JdbcMailboxDao jdbcMailboxDao;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** Each implementation works on its own recipients so the runs never see each other's rows. */
+    private Map<String, MailboxDao> daos() {
+        return Map.of("jpa", messageRepository, "jdbc", jdbcMailboxDao);
+    }
+
+    private static Message message(String recipientHash, int payload) {
+        return Message.builder().recipientHash(recipientHash).payload(new byte[] { (byte) payload }).build();
+    }
+
+    private static List<Integer> payloads(List<Message> messages) {
+        return messages.stream().map(message -> (int) message.getPayload()[0]).toList();
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void testSaveAssignsIdAndTimestamp() {
+        daos().forEach((name, dao) -> {
+            Message saved = dao.save(message(name + "-R", 1));
+
+            assertNotNull(saved.getMessageId(), name);
+            assertNotNull(saved.getCreatedAt(), name);
+            List<Message> found = dao.findByRecipientHashOrderByCreatedAtDesc(name + "-R");
+            assertEquals(1, found.size(), name);
+            assertEquals(saved.getMessageId(), found.get(0).getMessageId(), name);
+            assertArrayEquals(new byte[] { 1 }, found.get(0).getPayload(), name);
+            assertNull(found.get(0).getPayloadHash(), name);
+        });
+    }
+
+    @Test
+    public void testFindByRecipientHashOrderedByCreatedAtDesc() {
+        daos().forEach((name, dao) -> {
+            dao.save(message(name + "-R", 1));
+            pause();
+            dao.save(message(name + "-R", 2));
+            dao.save(message(name + "-OTHER", 3));
+
+            assertEquals(List.of(2, 1), payloads(dao.findByRecipientHashOrderByCreatedAtDesc(name + "-R")), name);
+        });
+    }
+
+    @Test
+    public void testDeleteByCreatedAtBefore() {
+        daos().forEach((name, dao) -> {
+            dao.save(message(name + "-R", 1));
+
+            dao.deleteByCreatedAtBefore(LocalDateTime.now().plusSeconds(1));
+
+            assertTrue(dao.findByRecipientHashOrderByCreatedAtDesc(name + "-R").isEmpty(), name);
+        });
+    }
+
+    @Test
+    public void testExpiredMessagesAreHiddenAndCounted() {
+        daos().forEach((name, dao) -> {
+            long expiredBefore = dao.countByExpiresAtBefore(LocalDateTime.now());
+            Message expired = message(name + "-R", 1);
+            expired.setExpiresAt(LocalDateTime.now().minusSeconds(1));
+            dao.save(expired);
+            Message ephemeral = message(name + "-R", 2);
+            ephemeral.setExpiresAt(LocalDateTime.now().plusMinutes(5));
+            dao.save(ephemeral);
+            dao.save(message(name + "-R", 3));
+
+            assertEquals(List.of(3, 2), payloads(dao.findByRecipientHashOrderByCreatedAtDesc(name + "-R")), name);
+            assertEquals(List.of(2, 3), payloads(dao.findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+                    name + "-R", 0L, Limit.of(10))), name);
+            assertEquals(expiredBefore + 1, dao.countByExpiresAtBefore(LocalDateTime.now()), name);
+        });
+    }
+
+    @Test
+    public void testSummariesCountUnexpiredMessagesPerRecipient() {
+        daos().forEach((name, dao) -> {
+            dao.save(message(name + "-R", 1));
+            Message newest = dao.save(message(name + "-R", 2));
+            Message expired = message(name + "-R", 3);
+            expired.setExpiresAt(LocalDateTime.now().minusSeconds(1));
+            dao.save(expired);
+            dao.save(message(name + "-OTHER", 4));
+
+            assertEquals(new MailboxSummary(name + "-R", 2, newest.getMessageId()),
+                    dao.summarizeMailbox(name + "-R").orElseThrow(), name);
+            assertTrue(dao.summarizeMailbox(name + "-NOBODY").isEmpty(), name);
+            List<MailboxSummary> all = dao.summarizeMailboxes();
+            assertTrue(all.contains(new MailboxSummary(name + "-R", 2, newest.getMessageId())), name);
+            assertTrue(all.stream().anyMatch(summary -> summary.recipientHash().equals(name + "-OTHER")), name);
+        });
+    }
+
+    @Test
+    public void testCursorRangeScanReturnsAscendingIdsAfterCursor() {
+        daos().forEach((name, dao) -> {
+            Message first = dao.save(message(name + "-R", 1));
+            Message second = dao.save(message(name + "-R", 2));
+            Message third = dao.save(message(name + "-R", 3));
+            dao.save(message(name + "-OTHER", 4));
+
+            List<Message> page = dao.findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+                    name + "-R", first.getMessageId(), Limit.of(1));
+
+            assertEquals(1, page.size(), name);
+            assertEquals(second.getMessageId(), page.get(0).getMessageId(), name);
+            assertTrue(dao.findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+                    name + "-R", third.getMessageId(), Limit.of(10)).isEmpty(), name);
+        });
+    }
+
+    @Test
+    public void testCursorRangeScanIsBoundedByTheCreatedAtFloorOfTheCursor() {
+        daos().forEach((name, dao) -> {
+            Message first = dao.save(message(name + "-R", 1));
+            Message second = dao.save(message(name + "-R", 2));
+            messageRepository.flush();
+            // Only a row stored with a clock far behind its id falls below the floor.
+            jdbcTemplate.update("UPDATE mailbox SET created_at = ? WHERE message_id = ?",
+                    MailboxDao.createdAtFloor(first.getMessageId()).minusMinutes(1), second.getMessageId());
+
+            assertTrue(dao.findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+                    name + "-R", first.getMessageId(), Limit.of(10)).isEmpty(), name);
+        });
+    }
+}
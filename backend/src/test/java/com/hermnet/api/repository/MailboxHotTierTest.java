@@ -0,0 +1,100 @@
+package com.hermnet.api.repository;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for the off-heap cache of recent mailbox payloads.
+ */
+class MailboxHotTierTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    /** Four 64-byte pages; entries of up to two pages. */
+    private MailboxHotTier tier;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        tier = new MailboxHotTier(meterRegistry, 256, 64, 128);
+    }
+
+    private static byte[] payload(int size, int fill) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (fill + i);
+        }
+        return payload;
+    }
+
+    @Test
+    void putAndGet_RoundTripsPayloadsSpanningSeveralPages() {
+        tier.put(1L, payload(100, 1));
+        tier.put(2L, payload(3, 7));
+
+        assertArrayEquals(payload(100, 1), tier.get(1L));
+        assertArrayEquals(payload(3, 7), tier.get(2L));
+        assertEquals(2, tier.size());
+        assertEquals(103, tier.storedBytes());
+    }
+
+    @Test
+    void put_EvictsLeastRecentlyUsedWhenFull() {
+        tier.put(1L, payload(128, 1));
+        tier.put(2L, payload(128, 2));
+        tier.get(1L);
+
+        tier.put(3L, payload(64, 3));
+
+        assertNull(tier.get(2L));
+        assertArrayEquals(payload(128, 1), tier.get(1L));
+        assertArrayEquals(payload(64, 3), tier.get(3L));
+        assertEquals(1.0, meterRegistry.get("hermnet.mailbox.hot_tier.evictions").counter().count());
+    }
+
+    @Test
+    void put_SkipsPayloadsAboveTheEntryLimit() {
+        tier.put(1L, payload(129, 1));
+
+        assertNull(tier.get(1L));
+        assertEquals(0, tier.size());
+        assertEquals(1.0, meterRegistry.get("hermnet.mailbox.hot_tier.lookups").tag("result", "miss")
+                .counter().count());
+    }
+
+    @Test
+    void removeAll_FreesPagesForNewEntries() {
+        tier.put(1L, payload(128, 1));
+        tier.put(2L, payload(128, 2));
+
+        tier.removeAll(List.of(1L, 2L, 99L));
+        tier.put(3L, payload(128, 3));
+        tier.put(4L, payload(128, 4));
+
+        assertEquals(2, tier.size());
+        assertEquals(0.0, meterRegistry.get("hermnet.mailbox.hot_tier.evictions").counter().count());
+        assertArrayEquals(payload(128, 3), tier.get(3L));
+    }
+
+    @Test
+    void removeOlderThan_DropsOnlyLowerIds() {
+        tier.put(1L, payload(64, 1));
+        tier.put(2L, payload(64, 2));
+        tier.put(3L, payload(64, 3));
+
+        assertEquals(2, tier.removeOlderThan(3L));
+
+        assertEquals(1, tier.size());
+        assertNull(tier.get(2L));
+        assertArrayEquals(payload(64, 3), tier.get(3L));
+        assertEquals(64, tier.storedBytes());
+    }
+}
@@ -0,0 +1,256 @@
+package com.hermnet.api.repository;
+
+import com.hermnet.api.config.IdGeneratorConfig;
+import com.hermnet.api.dto.SendMessageRequest;
+import com.hermnet.api.model.Message;
+import com.hermnet.api.model.Snowflake;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+
+import javax.sql.DataSource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the cursor-based JDBC mailbox scan.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ MailboxJdbcRepository.class, PayloadBlobStore.class, IdGeneratorConfig.class })
+public class MailboxJdbcRepositoryTest {
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MailboxJdbcRepository mailboxJdbcRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private Snowflake snowflake;
+
+    @Autowired
+    private PayloadBlobStore payloadBlobStore;
+
+    private static final String RECIPIENT_HASH = "HNET-TEST-RECIPIENT-HASH";
+
+    @BeforeEach
+    public void setUp() {
+        messageRepository.deleteAll();
+    }
+
+    private Message save(String recipientHash, byte[] payload) {
+        return messageRepository.saveAndFlush(Message.builder().recipientHash(recipientHash).payload(payload).build());
+    }
+
+    @Test
+    public void testScanAfterStreamsOwnMessagesInIdOrder() {
+        Message first = save(RECIPIENT_HASH, new byte[] { 1 });
+        Message second = save(RECIPIENT_HASH, new byte[] { 2, 2 });
+        save("OTHER-USER-HASH", new byte[] { 9 });
+        Message third = save(RECIPIENT_HASH, new byte[] { 3, 3, 3 });
+
+        List<Long> ids = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        mailboxJdbcRepository.scanAfter(RECIPIENT_HASH, first.getMessageId(), 10, (id, createdAt, length, payload) -> {
+            assertNotNull(createdAt);
+            byte[] bytes = payload.readAllBytes();
+            assertEquals(length, bytes.length);
+            ids.add(id);
+            payloads.add(bytes);
+            return true;
+        });
+
+        assertEquals(List.of(second.getMessageId(), third.getMessageId()), ids);
+        assertArrayEquals(new byte[] { 3, 3, 3 }, payloads.get(1));
+    }
+
+    @Test
+    public void testCreatedAtBoundsBracketTheRowOfAnId() {
+        Message saved = save(RECIPIENT_HASH, new byte[] { 1 });
+        LocalDateTime createdAt = messageRepository.findById(saved.getMessageId()).orElseThrow().getCreatedAt();
+
+        assertFalse(createdAt.isBefore(MailboxDao.createdAtFloor(saved.getMessageId() - 1)));
+        assertFalse(createdAt.isAfter(MailboxDao.createdAtCeiling(saved.getMessageId())));
+        assertFalse(MailboxDao.createdAtFloor(saved.getMessageId()).isAfter(LocalDateTime.now()));
+        assertEquals(Set.of(saved.getMessageId()),
+                mailboxJdbcRepository.deleteByIds(RECIPIENT_HASH, List.of(-5L, saved.getMessageId())));
+    }
+
+    @Test
+    public void testScanAfterHonoursRowLimitAndEarlyStop() {
+        for (int i = 0; i < 5; i++) {
+            save(RECIPIENT_HASH, new byte[] { (byte) i });
+        }
+
+        List<Long> limited = new ArrayList<>();
+        mailboxJdbcRepository.scanAfter(RECIPIENT_HASH, 0, 3, (id, createdAt, length, payload) -> limited.add(id));
+        assertEquals(3, limited.size());
+
+        List<Long> stopped = new ArrayList<>();
+        mailboxJdbcRepository.scanAfter(RECIPIENT_HASH, 0, 10, (id, createdAt, length, payload) -> {
+            stopped.add(id);
+            return stopped.size() < 2;
+        });
+        assertEquals(2, stopped.size());
+    }
+
+    @Test
+    public void testScanAfterSkipsExpiredMessages() {
+        Message expired = Message.builder().recipientHash(RECIPIENT_HASH).payload(new byte[] { 1 })
+                .expiresAt(LocalDateTime.now().minusSeconds(1)).build();
+        messageRepository.saveAndFlush(expired);
+        assertEquals(1, mailboxJdbcRepository.insertBatch(
+                List.of(new SendMessageRequest(RECIPIENT_HASH, new byte[] { 2 }, 300))).length);
+
+        List<byte[]> payloads = new ArrayList<>();
+        mailboxJdbcRepository.scanAfter(RECIPIENT_HASH, 0, 10,
+                (id, createdAt, length, payload) -> payloads.add(payload.readAllBytes()));
+
+        assertEquals(1, payloads.size());
+        assertArrayEquals(new byte[] { 2 }, payloads.get(0));
+    }
+
+    @Test
+    public void testScanAfterSeesBulkAckInSameTransaction() {
+        Message first = save(RECIPIENT_HASH, new byte[] { 1 });
+        Message second = save(RECIPIENT_HASH, new byte[] { 2 });
+        Message third = save(RECIPIENT_HASH, new byte[] { 3 });
+
+        assertEquals(List.of(first.getMessageId(), second.getMessageId()),
+                mailboxJdbcRepository.deleteUpTo(RECIPIENT_HASH, second.getMessageId()));
+
+        List<Long> remaining = new ArrayList<>();
+        mailboxJdbcRepository.scanAfter(RECIPIENT_HASH, 0, 10, (id, createdAt, length, payload) -> remaining.add(id));
+        assertEquals(List.of(third.getMessageId()), remaining);
+    }
+
+    @Test
+    public void testAckDeletesReportTheirIdsAndEvictTheHotTier() {
+        MailboxHotTier tier = new MailboxHotTier(new SimpleMeterRegistry(), 4096, 64, 128);
+        MailboxJdbcRepository cached = new MailboxJdbcRepository(dataSource, snowflake, payloadBlobStore, tier, 16);
+        cached.insertBatch(List.of(
+                new SendMessageRequest(RECIPIENT_HASH, new byte[] { 1 }),
+                new SendMessageRequest(RECIPIENT_HASH, new byte[] { 2 }),
+                new SendMessageRequest("OTHER-USER-HASH", new byte[] { 3 })));
+        List<Long> ids = messageRepository.findAll().stream().map(Message::getMessageId).sorted().toList();
+        assertEquals(3, tier.size());
+
+        assertEquals(List.of(ids.get(0)), cached.deleteUpTo(RECIPIENT_HASH, ids.get(0)));
+        assertNull(tier.get(ids.get(0)));
+        assertEquals(List.of(ids.get(1)), cached.deleteCreatedUpTo(RECIPIENT_HASH, null));
+        assertNull(tier.get(ids.get(1)));
+        assertArrayEquals(new byte[] { 3 }, tier.get(ids.get(2)));
+        assertTrue(cached.deleteCreatedUpTo(RECIPIENT_HASH, LocalDateTime.now()).isEmpty());
+    }
+
+    @Test
+    public void testRetentionBatchesStopAtTheLimitAndReportTheirIds() {
+        for (int i = 0; i < 5; i++) {
+            save(RECIPIENT_HASH, new byte[] { (byte) i });
+        }
+        Message expired = Message.builder().recipientHash(RECIPIENT_HASH).payload(new byte[] { 9 })
+                .expiresAt(LocalDateTime.now().minusSeconds(1)).build();
+        messageRepository.saveAndFlush(expired);
+        LocalDateTime cutoff = LocalDateTime.now().plusSeconds(1);
+
+        assertEquals(List.of(expired.getMessageId()),
+                mailboxJdbcRepository.deleteBatchExpiredBefore(LocalDateTime.now(), 10));
+        assertEquals(2, mailboxJdbcRepository.deleteBatchCreatedBefore(cutoff, 2).size());
+        assertEquals(3, mailboxJdbcRepository.deleteBatchCreatedBefore(cutoff, 10).size());
+        assertEquals(0, messageRepository.count());
+    }
+
+    @Test
+    public void testDeleteByIdsOnlyRemovesOwnMessagesAndReportsDeleted() {
+        Message mine = save(RECIPIENT_HASH, new byte[] { 1 });
+        Message kept = save(RECIPIENT_HASH, new byte[] { 2 });
+        Message foreign = save("OTHER-USER-HASH", new byte[] { 3 });
+
+        Set<Long> deleted = mailboxJdbcRepository.deleteByIds(RECIPIENT_HASH,
+                List.of(mine.getMessageId(), mine.getMessageId(), foreign.getMessageId(), 999_999L));
+
+        assertEquals(Set.of(mine.getMessageId()), deleted);
+        assertTrue(messageRepository.existsById(kept.getMessageId()));
+        assertTrue(messageRepository.existsById(foreign.getMessageId()));
+        assertFalse(messageRepository.existsById(mine.getMessageId()));
+    }
+
+    @Test
+    public void testDeleteByIdsIgnoresIdsThatWereNeverIssued() {
+        Message mine = save(RECIPIENT_HASH, new byte[] { 1 });
+
+        Set<Long> deleted = mailboxJdbcRepository.deleteByIds(RECIPIENT_HASH,
+                List.of(Long.MIN_VALUE, 0L, mine.getMessageId()));
+
+        assertEquals(Set.of(mine.getMessageId()), deleted);
+        assertTrue(mailboxJdbcRepository.deleteByIds(RECIPIENT_HASH, List.of(Long.MIN_VALUE)).isEmpty());
+    }
+
+    @Test
+    public void testDeleteByIdsSpansSeveralChunks() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < MailboxJdbcRepository.DELETE_CHUNK_SIZE + 5; i++) {
+            ids.add(save(RECIPIENT_HASH, new byte[] { 1 }).getMessageId());
+        }
+
+        Set<Long> deleted = mailboxJdbcRepository.deleteByIds(RECIPIENT_HASH, ids);
+
+        assertEquals(ids.size(), deleted.size());
+        assertEquals(0, messageRepository.count());
+    }
+
+    @Test
+    public void testInsertBatchStoresEveryMessage() {
+        long[] ids = mailboxJdbcRepository.insertBatch(List.of(
+                new SendMessageRequest(RECIPIENT_HASH, new byte[] { 1 }),
+                new SendMessageRequest(RECIPIENT_HASH, new byte[] { 2, 2 }),
+                new SendMessageRequest("OTHER-USER-HASH", new byte[] { 3 })));
+
+        assertEquals(3, ids.length);
+        List<Message> mine = messageRepository.findByRecipientHashOrderByCreatedAtDesc(RECIPIENT_HASH);
+        assertEquals(2, mine.size());
+        assertNotNull(mine.get(0).getCreatedAt());
+        assertTrue(mine.stream().anyMatch(m -> m.getPayload().length == 2));
+    }
+
+    @Test
+    public void testInsertBatchAssignsIdsInInsertionOrder() {
+        long[] ids = mailboxJdbcRepository.insertBatch(List.of(
+                new SendMessageRequest(RECIPIENT_HASH, new byte[] { 1 }),
+                new SendMessageRequest(RECIPIENT_HASH, new byte[] { 2 })));
+
+        List<Message> mine = messageRepository.findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+                RECIPIENT_HASH, 0L, Limit.of(10));
+        assertEquals(2, mine.size());
+        assertEquals(1, mine.get(0).getPayload()[0]);
+        assertEquals(2, mine.get(1).getPayload()[0]);
+        assertTrue(mine.get(0).getMessageId() > Integer.MAX_VALUE, "Ids are 64-bit Snowflake values");
+        assertEquals(mine.get(0).getMessageId(), ids[0]);
+        assertEquals(mine.get(1).getMessageId(), ids[1]);
+    }
+
+    @Test
+    public void testReferencedPayloadHashesReturnsOnlyHashesStillInUse() {
+        String kept = "aa".repeat(32);
+        messageRepository.saveAndFlush(Message.builder().recipientHash(RECIPIENT_HASH)
+                .payload(new byte[0]).payloadHash(kept).payloadLength(1024L).build());
+
+        Set<String> referenced = mailboxJdbcRepository.referencedPayloadHashes(List.of(kept, "bb".repeat(32)));
+
+        assertEquals(Set.of(kept), referenced);
+    }
+}
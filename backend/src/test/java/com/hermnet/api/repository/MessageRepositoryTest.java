@@ -10,6 +10,8 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import java.time.LocalDateTime;
 import java.util.List;
 
+import org.springframework.data.domain.Limit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -136,4 +138,20 @@ public class MessageRepositoryTest {
         List<Message> remaining = messageRepository.findAll();
         assertTrue(remaining.isEmpty(), "Message should be deleted");
     }
+
+    @Test
+    public void testCursorRangeScanReturnsAscendingIdsAfterCursor() {
+        Message first = messageRepository.save(Message.builder().recipientHash(RECIPIENT_HASH).payload(new byte[] { 1 }).build());
+        Message second = messageRepository.save(Message.builder().recipientHash(RECIPIENT_HASH).payload(new byte[] { 2 }).build());
+        Message third = messageRepository.save(Message.builder().recipientHash(RECIPIENT_HASH).payload(new byte[] { 3 }).build());
+        messageRepository.save(Message.builder().recipientHash("OTHER-USER-HASH").payload(new byte[] { 4 }).build());
+
+        List<Message> page = messageRepository.findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+                RECIPIENT_HASH, first.getMessageId(), Limit.of(1));
+
+        assertEquals(1, page.size());
+        assertEquals(second.getMessageId(), page.get(0).getMessageId());
+        assertTrue(messageRepository.findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+                RECIPIENT_HASH, third.getMessageId(), Limit.of(10)).isEmpty());
+    }
 }
@@ -0,0 +1,169 @@
+package com.hermnet.api.repository;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the content-addressed payload file store.
+ */
+class PayloadBlobStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private PayloadBlobStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new PayloadBlobStore(dir, true, 16);
+    }
+
+    private static byte[] payload(int size, int fill) {
+        byte[] payload = new byte[size];
+        Arrays.fill(payload, (byte) fill);
+        return payload;
+    }
+
+    private void age(String hash) throws Exception {
+        Files.setLastModifiedTime(store.pathOf(hash), FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+    }
+
+    @Test
+    void store_KeepsSmallPayloadsInline() {
+        PayloadBlobStore.StoredPayload stored = store.store(payload(15, 1));
+
+        assertEquals(15, stored.inline().length);
+        assertNull(stored.hash());
+    }
+
+    @Test
+    void store_KeepsEverythingInlineWhenDisabled() {
+        PayloadBlobStore disabled = new PayloadBlobStore(dir, false, 16);
+
+        assertNull(disabled.store(payload(1024, 1)).hash());
+    }
+
+    @Test
+    void store_WritesLargePayloadToContentAddressedFile() throws Exception {
+        byte[] payload = payload(64, 7);
+
+        PayloadBlobStore.StoredPayload stored = store.store(payload);
+
+        assertEquals(0, stored.inline().length);
+        assertEquals(64L, stored.length());
+        Path file = store.pathOf(stored.hash());
+        assertEquals(dir.resolve(stored.hash().substring(0, 2)).resolve(stored.hash().substring(2, 4)),
+                file.getParent());
+        assertArrayEquals(payload, Files.readAllBytes(file));
+        assertArrayEquals(payload, store.read(stored.hash()));
+    }
+
+    @Test
+    void store_SameContentSharesOneFile() {
+        String first = store.store(payload(64, 7)).hash();
+        String second = store.store(payload(64, 7)).hash();
+
+        assertEquals(first, second);
+    }
+
+    @Test
+    void open_TransfersWholeFile() throws Exception {
+        byte[] payload = payload(100_000, 3);
+        String hash = store.store(payload).hash();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (InputStream stream = store.open(hash)) {
+            assertEquals(payload.length, stream.transferTo(out));
+        }
+
+        assertArrayEquals(payload, out.toByteArray());
+    }
+
+    @Test
+    void sweep_DeletesOnlyOldUnreferencedFiles() throws Exception {
+        String referenced = store.store(payload(64, 1)).hash();
+        String orphan = store.store(payload(64, 2)).hash();
+        String young = store.store(payload(64, 3)).hash();
+        age(referenced);
+        age(orphan);
+
+        int deleted = store.sweep(Duration.ofMinutes(10), 10,
+                hashes -> hashes.contains(referenced) ? Set.of(referenced) : Set.of());
+
+        assertEquals(1, deleted);
+        assertTrue(Files.exists(store.pathOf(referenced)));
+        assertFalse(Files.exists(store.pathOf(orphan)));
+        assertTrue(Files.exists(store.pathOf(young)));
+    }
+
+    @Test
+    void sweep_KeepsAFileStoredAgainWhileItWasBeingChecked() throws Exception {
+        byte[] payload = payload(64, 4);
+        String hash = store.store(payload).hash();
+        age(hash);
+
+        int deleted = store.sweep(Duration.ofMinutes(10), 10, hashes -> {
+            // A new row with the same ciphertext arrives after the age check.
+            store.store(payload);
+            return Set.of();
+        });
+
+        assertEquals(0, deleted);
+        assertArrayEquals(payload, store.read(hash));
+    }
+
+    @Test
+    void sweep_SettlesTombstonesLeftByACrash() throws Exception {
+        byte[] payload = payload(64, 5);
+        String restored = store.store(payload).hash();
+        Path young = store.pathOf(restored).resolveSibling(restored + ".crashed.deleting");
+        Files.move(store.pathOf(restored), young);
+        String gone = store.store(payload(64, 6)).hash();
+        Path old = store.pathOf(gone).resolveSibling(gone + ".crashed.deleting");
+        Files.move(store.pathOf(gone), old);
+        Files.setLastModifiedTime(old, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+
+        store.sweep(Duration.ofMinutes(10), 10, hashes -> Set.of());
+
+        assertArrayEquals(payload, store.read(restored));
+        assertFalse(Files.exists(young));
+        assertFalse(Files.exists(old));
+        assertFalse(Files.exists(store.pathOf(gone)));
+    }
+
+    @Test
+    void sweep_RemovesAbandonedTemporaryFiles() throws Exception {
+        String hash = store.store(payload(64, 1)).hash();
+        Path temp = store.pathOf(hash).resolveSibling(hash + ".crashed.tmp");
+        Files.write(temp, new byte[] { 1 });
+        Files.setLastModifiedTime(temp, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+
+        store.sweep(Duration.ofMinutes(10), 10, hashes -> Set.copyOf(hashes));
+
+        assertFalse(Files.exists(temp));
+        assertTrue(Files.exists(store.pathOf(hash)));
+    }
+
+    @Test
+    void pathOf_RejectsAnythingButAHash() {
+        assertThrows(IllegalArgumentException.class, () -> store.pathOf("../../etc/passwd"));
+    }
+}
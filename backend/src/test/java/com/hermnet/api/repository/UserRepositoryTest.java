@@ -324,4 +324,19 @@ public class UserRepositoryTest {
         User found = userRepository.findById("HNET-LONG").get();
         assertEquals(longKey, found.getPublicKey(), "Should verify long public key storage");
     }
+
+    @Test
+    public void testClearPushTokens_ShouldOnlyClearDeadTokens() {
+
+        userRepository.save(User.builder().idHash("HNET-DEAD1").publicKey("key-dead").pushToken("dead-token").build());
+        userRepository.save(User.builder().idHash("HNET-ALIVE").publicKey("key-alive").pushToken("alive-token").build());
+
+
+        int cleared = userRepository.clearPushTokens(java.util.List.of("dead-token", "unknown-token"));
+
+
+        assertEquals(1, cleared);
+        assertNull(userRepository.findById("HNET-DEAD1").get().getPushToken());
+        assertEquals("alive-token", userRepository.findById("HNET-ALIVE").get().getPushToken());
+    }
 }
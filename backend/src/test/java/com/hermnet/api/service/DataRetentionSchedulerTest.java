@@ -2,19 +2,29 @@ package com.hermnet.api.service;
 
 import com.hermnet.api.repository.AuthChallengeRepository;
 import com.hermnet.api.repository.BlacklistedTokenRepository;
+import com.hermnet.api.repository.MailboxJdbcRepository;
 import com.hermnet.api.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class DataRetentionSchedulerTest {
@@ -22,21 +32,47 @@ class DataRetentionSchedulerTest {
     @Mock
     private MessageRepository messageRepository;
 
+    @Mock
+    private MailboxJdbcRepository mailboxJdbcRepository;
+
     @Mock
     private AuthChallengeRepository authChallengeRepository;
 
     @Mock
     private BlacklistedTokenRepository blacklistedTokenRepository;
 
+    @Mock
+    private MaintenanceLock maintenanceLock;
+
+    private SimpleMeterRegistry meterRegistry;
+
     private DataRetentionScheduler scheduler;
 
     @BeforeEach
     void setUp() {
-        scheduler = new DataRetentionScheduler(
+        meterRegistry = new SimpleMeterRegistry();
+        scheduler = scheduler(60_000);
+        lenient().when(maintenanceLock.runExclusively(eq("data-retention"), any())).thenAnswer(invocation -> {
+            invocation.getArgument(1, Runnable.class).run();
+            return true;
+        });
+    }
+
+    private DataRetentionScheduler scheduler(long runBudgetMillis) {
+        return new DataRetentionScheduler(
                 messageRepository,
+                mailboxJdbcRepository,
                 authChallengeRepository,
-                blacklistedTokenRepository);
-        ReflectionTestUtils.setField(scheduler, "mailboxRetentionHours", 24L);
+                blacklistedTokenRepository,
+                maintenanceLock,
+                meterRegistry,
+                24L,
+                2,
+                runBudgetMillis);
+    }
+
+    private double gauge(String name, String table) {
+        return meterRegistry.get(name).tag("table", table).gauge().value();
     }
 
     @Test
@@ -51,9 +87,9 @@ class DataRetentionSchedulerTest {
         ArgumentCaptor<LocalDateTime> challengeCutoffCaptor = ArgumentCaptor.forClass(LocalDateTime.class);
         ArgumentCaptor<LocalDateTime> tokenCutoffCaptor = ArgumentCaptor.forClass(LocalDateTime.class);
 
-        verify(messageRepository).deleteByCreatedAtBefore(mailboxCutoffCaptor.capture());
-        verify(authChallengeRepository).deleteByExpiresAtBefore(challengeCutoffCaptor.capture());
-        verify(blacklistedTokenRepository).deleteByExpiresAtBefore(tokenCutoffCaptor.capture());
+        verify(mailboxJdbcRepository).deleteBatchCreatedBefore(mailboxCutoffCaptor.capture(), eq(2));
+        verify(authChallengeRepository).deleteBatchExpiredBefore(challengeCutoffCaptor.capture(), eq(2));
+        verify(blacklistedTokenRepository).deleteBatchExpiredBefore(tokenCutoffCaptor.capture(), eq(2));
 
         LocalDateTime mailboxCutoff = mailboxCutoffCaptor.getValue();
         LocalDateTime challengeCutoff = challengeCutoffCaptor.getValue();
@@ -69,4 +105,45 @@ class DataRetentionSchedulerTest {
         assertTrue(!tokenCutoff.isBefore(beforeExecution) && !tokenCutoff.isAfter(afterExecution),
                 "Token cutoff must be current time");
     }
-}
\ No newline at end of file
+
+    @Test
+    void purgeExpiredData_SkipsTheCycleWhileAnotherNodeHoldsTheLock() {
+        DataRetentionScheduler follower = scheduler(60_000);
+        doReturn(false).when(maintenanceLock).runExclusively(eq("data-retention"), any());
+
+        follower.purgeExpiredData();
+
+        verify(mailboxJdbcRepository, never()).deleteBatchCreatedBefore(any(), eq(2));
+    }
+
+    @Test
+    void purgeExpiredData_DeletesInBatchesUntilOneComesBackShort() {
+        when(mailboxJdbcRepository.deleteBatchCreatedBefore(any(), eq(2)))
+                .thenReturn(List.of(1L, 2L), List.of(3L, 4L), List.of(5L));
+
+        scheduler.purgeExpiredData();
+
+        verify(mailboxJdbcRepository, times(3)).deleteBatchCreatedBefore(any(), eq(2));
+        verify(messageRepository, never()).countByCreatedAtBefore(any());
+        assertEquals(5.0, meterRegistry.get("hermnet.retention.purged").tag("table", "mailbox").counter().count());
+        assertEquals(0.0, gauge("hermnet.retention.backlog", "mailbox"));
+        assertEquals(0.0, gauge("hermnet.retention.lag.seconds", "mailbox"));
+    }
+
+    @Test
+    void purgeExpiredData_StopsAtTheBudgetAndReportsTheBacklog() {
+        meterRegistry = new SimpleMeterRegistry();
+        DataRetentionScheduler budgetless = scheduler(0);
+        when(mailboxJdbcRepository.deleteBatchCreatedBefore(any(), eq(2))).thenReturn(List.of(1L, 2L));
+        when(messageRepository.countByCreatedAtBefore(any())).thenReturn(40L);
+
+        budgetless.purgeExpiredData();
+
+        verify(mailboxJdbcRepository, times(1)).deleteBatchCreatedBefore(any(), eq(2));
+        verify(authChallengeRepository).deleteBatchExpiredBefore(any(), eq(2));
+        verify(blacklistedTokenRepository).deleteBatchExpiredBefore(any(), eq(2));
+        assertEquals(40.0, gauge("hermnet.retention.backlog", "mailbox"));
+        assertTrue(gauge("hermnet.retention.lag.seconds", "mailbox") >= 0.0);
+        assertEquals(0.0, gauge("hermnet.retention.backlog", "auth_challenges"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+
+import com.hermnet.api.service.PushGateway.Result;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FakePushGatewayTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private FakePushGateway gateway(long latencyMillis, double failureRate, double retryableRate,
+            double deadTokenRate, long maxPerSecond) {
+        return new FakePushGateway(meterRegistry, latencyMillis, 0, failureRate, retryableRate, deadTokenRate,
+                maxPerSecond);
+    }
+
+    private static List<String> tokens(int count) {
+        return Collections.nCopies(count, "token");
+    }
+
+    @Test
+    void injectsLatencyPerCall() {
+        FakePushGateway gateway = gateway(50, 0, 0, 0, 0);
+
+        long start = System.nanoTime();
+        gateway.sendSync(tokens(10));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis >= 50, "Call should take at least the configured latency");
+        assertEquals(10, gateway.acceptedCount());
+    }
+
+    @Test
+    void injectsWholeCallFailures() {
+        FakePushGateway gateway = gateway(0, 1.0, 0, 0, 0);
+
+        assertThrows(PushGatewayException.class, () -> gateway.sendSync(tokens(1)));
+    }
+
+    @Test
+    void injectsPerMessageResults() {
+        assertEquals(Collections.nCopies(5, Result.DEAD_TOKEN), gateway(0, 0, 0, 1.0, 0).sendSync(tokens(5)));
+        assertEquals(Collections.nCopies(5, Result.RETRYABLE), gateway(0, 0, 1.0, 0, 0).sendSync(tokens(5)));
+    }
+
+    @Test
+    void capsThroughput() {
+        FakePushGateway gateway = gateway(0, 0, 0, 0, 1_000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            gateway.sendSync(tokens(100));
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis >= 350, "400 pushes at 1000/s should take ~400 ms, took " + elapsedMillis);
+    }
+
+    /** Throughput check; run with {@code mvn test -Pbenchmarks}. */
+    @Test
+    @Tag("benchmark")
+    void endToEndThroughput_ThroughDispatcher() throws Exception {
+        FakePushGateway gateway = gateway(5, 0, 0, 0, 0);
+        PushBatchDispatcher dispatcher = new PushBatchDispatcher(gateway, mock(TaskScheduler.class),
+                new PushCircuitBreaker(meterRegistry, 5, 30), mock(PushTokenPruner.class), meterRegistry,
+                500, 5, 100_000, 3, 100);
+        int pushes = 20_000;
+
+        dispatcher.start();
+        for (int i = 0; i < pushes; i++) {
+            dispatcher.enqueue("token-" + i);
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (gateway.acceptedCount() < pushes && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        dispatcher.stop();
+
+        // 10 s is 2 000 pushes/s, far below what 5 ms batches of 500 allow.
+        assertEquals(pushes, gateway.acceptedCount());
+    }
+}
@@ -0,0 +1,83 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.google.firebase.messaging.SendResponse;
+import com.hermnet.api.service.PushGateway.Result;
+
+@ExtendWith(MockitoExtension.class)
+class FcmPushGatewayTest {
+
+    @Mock
+    private ObjectProvider<FirebaseMessaging> firebaseMessagingProvider;
+
+    @Mock
+    private FirebaseMessaging firebaseMessaging;
+
+    private FcmPushGateway gateway;
+
+    @BeforeEach
+    void setUp() {
+        when(firebaseMessagingProvider.getObject()).thenReturn(firebaseMessaging);
+        gateway = new FcmPushGateway(firebaseMessagingProvider);
+    }
+
+    private static SendResponse success() {
+        SendResponse response = mock(SendResponse.class);
+        when(response.isSuccessful()).thenReturn(true);
+        return response;
+    }
+
+    private static SendResponse failure(MessagingErrorCode code) {
+        FirebaseMessagingException exception = mock(FirebaseMessagingException.class);
+        when(exception.getMessagingErrorCode()).thenReturn(code);
+        SendResponse response = mock(SendResponse.class);
+        when(response.isSuccessful()).thenReturn(false);
+        when(response.getException()).thenReturn(exception);
+        return response;
+    }
+
+    @Test
+    void sendSync_MapsFcmErrorCodesToResults() throws Exception {
+        List<SendResponse> responses = List.of(
+                success(),
+                failure(MessagingErrorCode.UNAVAILABLE),
+                failure(MessagingErrorCode.QUOTA_EXCEEDED),
+                failure(MessagingErrorCode.UNREGISTERED),
+                failure(MessagingErrorCode.INVALID_ARGUMENT),
+                failure(MessagingErrorCode.SENDER_ID_MISMATCH));
+        BatchResponse batch = mock(BatchResponse.class);
+        when(batch.getResponses()).thenReturn(responses);
+        when(firebaseMessaging.sendEach(anyList())).thenReturn(batch);
+
+        List<Result> results = gateway.sendSync(List.of("a", "b", "c", "d", "e", "f"));
+
+        assertEquals(List.of(Result.DELIVERED, Result.RETRYABLE, Result.RETRYABLE,
+                Result.DEAD_TOKEN, Result.DEAD_TOKEN, Result.REJECTED), results);
+    }
+
+    @Test
+    void sendSync_WrapsWholeCallFailure() throws Exception {
+        FirebaseMessagingException exception = mock(FirebaseMessagingException.class);
+        when(firebaseMessaging.sendEach(anyList())).thenThrow(exception);
+
+        assertThrows(PushGatewayException.class, () -> gateway.sendSync(List.of("a")));
+    }
+}
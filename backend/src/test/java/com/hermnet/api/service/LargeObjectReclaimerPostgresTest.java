@@ -0,0 +1,92 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Runs {@link LargeObjectReclaimer} against a real PostgreSQL and checks that
+ * the data pages of orphaned large objects leave {@code pg_largeobject} while
+ * referenced ones stay.
+ *
+ * The H2 test database has no large objects, so this only runs with
+ * {@code mvn test -Ppostgres-tests} and {@code HERMNET_TEST_PG_URL} (plus
+ * {@code HERMNET_TEST_PG_USER} / {@code HERMNET_TEST_PG_PASSWORD}) pointing at
+ * a disposable database: the reclaimer unlinks every orphan of the role in
+ * the whole database, and reading {@code pg_largeobject} needs a superuser.
+ */
+@Tag("postgres")
+@EnabledIfEnvironmentVariable(named = "HERMNET_TEST_PG_URL", matches = ".+")
+class LargeObjectReclaimerPostgresTest {
+
+    private static final String PAGES_SQL = "SELECT COUNT(*) FROM pg_largeobject WHERE loid IN (?, ?)";
+    private static final String METADATA_SQL = "SELECT COUNT(*) FROM pg_largeobject_metadata WHERE oid IN (?, ?)";
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private String schema;
+    private long kept;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource(System.getenv("HERMNET_TEST_PG_URL"),
+                System.getenv("HERMNET_TEST_PG_USER"), System.getenv("HERMNET_TEST_PG_PASSWORD"), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        schema = "lo_reclaim_" + UUID.randomUUID().toString().replace("-", "");
+        jdbcTemplate.execute("CREATE SCHEMA " + schema);
+        jdbcTemplate.execute("SET search_path TO " + schema);
+        jdbcTemplate.execute("CREATE TABLE mailbox (message_id BIGINT PRIMARY KEY, payload BYTEA)");
+        jdbcTemplate.execute("CREATE TABLE attachments (blob OID)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("SET search_path TO public");
+        jdbcTemplate.execute("DROP SCHEMA " + schema + " CASCADE");
+        if (kept != 0) {
+            jdbcTemplate.queryForList("SELECT lo_unlink(oid) FROM pg_largeobject_metadata WHERE oid = ?",
+                    kept);
+        }
+        dataSource.destroy();
+    }
+
+    private long createLargeObject() {
+        byte[] data = new byte[64 * 1024];
+        ThreadLocalRandom.current().nextBytes(data);
+        return jdbcTemplate.queryForObject("SELECT lo_from_bytea(0, ?)", Long.class, data);
+    }
+
+    private long count(String sql, long first, long second) {
+        return jdbcTemplate.queryForObject(sql, Long.class, first, second);
+    }
+
+    @Test
+    void reclaimOrphans_RemovesTheDataOfUnreferencedLargeObjectsOnly() {
+        kept = createLargeObject();
+        long orphanA = createLargeObject();
+        long orphanB = createLargeObject();
+        jdbcTemplate.update("INSERT INTO attachments (blob) VALUES (?)", kept);
+        assertTrue(count(PAGES_SQL, orphanA, orphanB) > 0);
+
+        LargeObjectReclaimer reclaimer = new LargeObjectReclaimer(jdbcTemplate, mock(MaintenanceLock.class),
+                new DataSourceTransactionManager(dataSource), 1);
+
+        assertTrue(reclaimer.reclaimOrphans() >= 2);
+        assertEquals(0, count(PAGES_SQL, orphanA, orphanB));
+        assertEquals(0, count(METADATA_SQL, orphanA, orphanB));
+        assertEquals(1, count(METADATA_SQL, kept, kept));
+        assertTrue(count(PAGES_SQL, kept, kept) > 0);
+    }
+}
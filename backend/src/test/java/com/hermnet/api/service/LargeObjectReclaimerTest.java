@@ -0,0 +1,94 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+@ExtendWith(MockitoExtension.class)
+class LargeObjectReclaimerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MaintenanceLock maintenanceLock;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private LargeObjectReclaimer reclaimer;
+
+    @BeforeEach
+    void setUp() {
+        reclaimer = new LargeObjectReclaimer(jdbcTemplate, maintenanceLock, transactionManager, 2);
+    }
+
+    @Test
+    void reclaimOrphans_UnlinksInBatchesEachInItsOwnTransaction() {
+        List<LargeObjectReclaimer.ReferenceColumn> references = List.of(
+                new LargeObjectReclaimer.ReferenceColumn("public", "attachments", "blob"));
+        String unlinkSql = LargeObjectReclaimer.unlinkBatchSql(references);
+        when(jdbcTemplate.queryForList(LargeObjectReclaimer.PAYLOAD_TYPE_SQL, String.class))
+                .thenReturn(List.of("bytea"));
+        when(jdbcTemplate.query(eq(LargeObjectReclaimer.REFERENCE_COLUMNS_SQL), any(RowMapper.class)))
+                .thenReturn(references);
+        when(jdbcTemplate.queryForList(unlinkSql, Integer.class, 2))
+                .thenReturn(List.of(1, 1), List.of(1, 1), List.of(1));
+
+        assertEquals(5, reclaimer.reclaimOrphans());
+        verify(jdbcTemplate, times(3)).queryForList(unlinkSql, Integer.class, 2);
+        verify(transactionManager, times(3)).getTransaction(
+                argThat(definition -> definition.getPropagationBehavior()
+                        == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    void unlinkBatchSql_SkipsLargeObjectsStillReferencedByAnyColumn() {
+        String sql = LargeObjectReclaimer.unlinkBatchSql(List.of(
+                new LargeObjectReclaimer.ReferenceColumn("public", "attachments", "blob"),
+                new LargeObjectReclaimer.ReferenceColumn("audit", "odd\"name", "ref")));
+
+        assertTrue(sql.contains("NOT EXISTS (SELECT 1 FROM \"public\".\"attachments\" x WHERE x.\"blob\" = m.oid)"));
+        assertTrue(sql.contains("\"audit\".\"odd\"\"name\""));
+        assertTrue(sql.endsWith("LIMIT ?)"));
+    }
+
+    @Test
+    void reclaimOrphans_DoesNothingWhilePayloadsAreStillLargeObjects() {
+        when(jdbcTemplate.queryForList(LargeObjectReclaimer.PAYLOAD_TYPE_SQL, String.class))
+                .thenReturn(List.of("oid"));
+
+        assertEquals(0, reclaimer.reclaimOrphans());
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(Integer.class), eq(2));
+    }
+
+    @Test
+    void reclaimOrphans_DoesNothingOutsidePostgres() {
+        when(jdbcTemplate.queryForList(LargeObjectReclaimer.PAYLOAD_TYPE_SQL, String.class))
+                .thenReturn(Collections.singletonList("BINARY LARGE OBJECT"));
+
+        assertEquals(0, reclaimer.reclaimOrphans());
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(Integer.class), eq(2));
+    }
+}
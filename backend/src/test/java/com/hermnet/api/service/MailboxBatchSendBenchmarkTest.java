@@ -0,0 +1,109 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import com.google.firebase.FirebaseApp;
+import com.hermnet.api.dto.SendMessageRequest;
+import com.hermnet.api.repository.MessageRepository;
+
+/**
+ * Compares a group send as N single sends against one batch send, at 1, 10
+ * and 100 recipients, and logs the per-send latency of each at debug level.
+ * At 100 recipients the batch must be the faster of the two.
+ *
+ * Runs against the in-memory H2 test database, so absolute numbers only show
+ * the relative cost; repeat against PostgreSQL for production figures. Runs
+ * with {@code mvn test -Pbenchmarks}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+        "logging.level.org.hibernate.SQL=INFO",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO" })
+class MailboxBatchSendBenchmarkTest {
+
+    private static final int PAYLOAD_BYTES = 4 * 1024;
+    private static final int ROUNDS = 20;
+
+    private static final Logger log = LoggerFactory.getLogger(MailboxBatchSendBenchmarkTest.class);
+
+    @MockBean(name = "firebaseApp")
+    private FirebaseApp firebaseApp;
+
+    @MockBean
+    private NotificationService notificationService;
+
+    @Autowired
+    private MailboxService mailboxService;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void groupSend_BatchVersusOneRequestPerRecipient() {
+        for (int recipients : new int[] { 1, 10, 100 }) {
+            List<SendMessageRequest> group = group(recipients);
+
+            // Warm-up, then measure.
+            sendOneByOne(group);
+            mailboxService.sendBatch(group);
+            long single = 0;
+            long batch = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                sendOneByOne(group);
+                single += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                mailboxService.sendBatch(group);
+                batch += System.nanoTime() - start;
+            }
+
+            log.debug("group send, {} recipients: single={} us batch={} us speed-up={}x",
+                    recipients, micros(single), micros(batch), (double) single / batch);
+            if (recipients == 100) {
+                assertTrue(batch < single, "batch send should beat 100 single sends");
+            }
+            assertEquals(2L * (ROUNDS + 1) * recipients, messageRepository.count());
+            messageRepository.deleteAllInBatch();
+        }
+    }
+
+    private void sendOneByOne(List<SendMessageRequest> group) {
+        for (SendMessageRequest message : group) {
+            mailboxService.send(message.recipientId(), message.payload());
+        }
+    }
+
+    private static double micros(long totalNanos) {
+        return totalNanos / 1_000.0 / ROUNDS;
+    }
+
+    private static List<SendMessageRequest> group(int recipients) {
+        List<SendMessageRequest> group = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            byte[] payload = new byte[PAYLOAD_BYTES];
+            ThreadLocalRandom.current().nextBytes(payload);
+            group.add(new SendMessageRequest("HNET-MEMBER-" + i, payload));
+        }
+        return group;
+    }
+}
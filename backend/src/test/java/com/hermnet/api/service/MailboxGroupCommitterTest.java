@@ -0,0 +1,121 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.hermnet.api.dto.SendMessageRequest;
+import com.hermnet.api.repository.MailboxJdbcRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class MailboxGroupCommitterTest {
+
+    @Mock
+    private MailboxJdbcRepository mailboxJdbcRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MailboxGroupCommitter committer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        committer = new MailboxGroupCommitter(mailboxJdbcRepository, meterRegistry, 64, 5, 1_000);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        committer.stop();
+    }
+
+    @Test
+    void concurrentSends_AreWrittenInFewerCommitsAndAllComplete() throws Exception {
+        List<Integer> groupSizes = Collections.synchronizedList(new ArrayList<>());
+        when(mailboxJdbcRepository.insertBatch(anyList())).thenAnswer(invocation -> {
+            List<SendMessageRequest> group = invocation.getArgument(0);
+            groupSizes.add(group.size());
+            return new long[group.size()];
+        });
+        committer.start();
+
+        int senders = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        CountDownLatch go = new CountDownLatch(1);
+        List<CompletableFuture<Long>> acks = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < senders; i++) {
+            int n = i;
+            pool.execute(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                acks.add(committer.submit(new SendMessageRequest("HNET-" + n, new byte[] { 1 })));
+            });
+        }
+        go.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(senders, groupSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(groupSizes.size() < senders, "Concurrent sends should share commits: " + groupSizes);
+        assertTrue(groupSizes.stream().allMatch(size -> size <= 64));
+        assertEquals(senders, meterRegistry.get("hermnet.mailbox.group_commit.wait").timer().count());
+        assertEquals(groupSizes.size(),
+                meterRegistry.get("hermnet.mailbox.group_commit.batch.size").summary().count());
+    }
+
+    @Test
+    void failedCommit_RetriesAloneSoOnlyTheBadMessageFails() {
+        SendMessageRequest good = new SendMessageRequest("HNET-A", new byte[] { 1 });
+        SendMessageRequest bad = new SendMessageRequest("HNET-B", new byte[] { 2 });
+        when(mailboxJdbcRepository.insertBatch(List.of(good, bad))).thenThrow(new IllegalStateException("bad row"));
+        when(mailboxJdbcRepository.insertBatch(List.of(good))).thenReturn(new long[] { 41 });
+        when(mailboxJdbcRepository.insertBatch(List.of(bad))).thenThrow(new IllegalStateException("bad row"));
+        CompletableFuture<Long> first = new CompletableFuture<>();
+        CompletableFuture<Long> second = new CompletableFuture<>();
+
+        committer.commit(List.of(
+                new MailboxGroupCommitter.PendingInsert(good, System.nanoTime(), first),
+                new MailboxGroupCommitter.PendingInsert(bad, System.nanoTime(), second)));
+
+        assertEquals(41L, first.join());
+        assertThrows(CompletionException.class, second::join);
+        assertEquals(1, meterRegistry.get("hermnet.mailbox.group_commit.wait").timer().count());
+    }
+
+    @Test
+    void failedCommit_FailsEveryCallerWhenTheDatabaseIsDown() {
+        when(mailboxJdbcRepository.insertBatch(anyList())).thenThrow(new IllegalStateException("db down"));
+        CompletableFuture<Long> first = new CompletableFuture<>();
+        CompletableFuture<Long> second = new CompletableFuture<>();
+
+        committer.commit(List.of(
+                new MailboxGroupCommitter.PendingInsert(new SendMessageRequest("HNET-A", new byte[] { 1 }), System.nanoTime(), first),
+                new MailboxGroupCommitter.PendingInsert(new SendMessageRequest("HNET-B", new byte[] { 2 }), System.nanoTime(), second)));
+
+        assertThrows(CompletionException.class, first::join);
+        assertThrows(CompletionException.class, second::join);
+    }
+}
@@ -0,0 +1,140 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.hermnet.api.model.Snowflake;
+import com.hermnet.api.repository.MailboxHotTier;
+
+@ExtendWith(MockitoExtension.class)
+class MailboxPartitionManagerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 10, 19, 14, 20);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MaintenanceLock maintenanceLock;
+
+    @Mock
+    private MailboxHotTier hotTier;
+
+    private MailboxPartitionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        manager = new MailboxPartitionManager(jdbcTemplate, maintenanceLock, hotTier, 2, 24);
+    }
+
+    private void givenPartitions(MailboxPartitionManager.Partition... partitions) {
+        when(jdbcTemplate.queryForList(MailboxPartitionManager.RELKIND_SQL, String.class)).thenReturn(List.of("p"));
+        when(jdbcTemplate.query(eq(MailboxPartitionManager.PARTITIONS_SQL), any(RowMapper.class)))
+                .thenReturn(List.of(partitions));
+    }
+
+    private static MailboxPartitionManager.Partition partition(String name, LocalDateTime upperBound) {
+        return new MailboxPartitionManager.Partition(name, Optional.ofNullable(upperBound));
+    }
+
+    @Test
+    void ensurePartitions_CreatesHoursAfterTheNewestPartition() {
+        givenPartitions(
+                partition("mailbox_legacy", LocalDateTime.of(2026, 10, 19, 15, 0)),
+                partition("mailbox_default", null));
+
+        assertEquals(2, manager.ensurePartitions(NOW));
+
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS mailbox_p2026101915 PARTITION OF mailbox "
+                + "FOR VALUES FROM ('2026-10-19 15:00:00') TO ('2026-10-19 16:00:00')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS mailbox_p2026101916 PARTITION OF mailbox "
+                + "FOR VALUES FROM ('2026-10-19 16:00:00') TO ('2026-10-19 17:00:00')");
+    }
+
+    @Test
+    void dropPartitionsBefore_DropsOnlyFullyExpiredRanges() {
+        givenPartitions(
+                partition("mailbox_p2026101812", LocalDateTime.of(2026, 10, 18, 13, 0)),
+                partition("mailbox_p2026101813", LocalDateTime.of(2026, 10, 18, 14, 0)),
+                partition("mailbox_p2026101814", LocalDateTime.of(2026, 10, 18, 15, 0)),
+                partition("mailbox_default", null));
+
+        assertEquals(2, manager.dropPartitionsBefore(NOW.minusHours(24)));
+
+        verify(jdbcTemplate).execute("ALTER TABLE mailbox DETACH PARTITION mailbox_p2026101812");
+        verify(jdbcTemplate).execute("DROP TABLE mailbox_p2026101812");
+        verify(jdbcTemplate).execute("DROP TABLE mailbox_p2026101813");
+        verify(jdbcTemplate, never()).execute("DROP TABLE mailbox_p2026101814");
+        verify(jdbcTemplate, never()).execute("DROP TABLE mailbox_default");
+        verify(hotTier).removeOlderThan(Snowflake.firstIdAt(
+                LocalDateTime.of(2026, 10, 18, 14, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+    }
+
+    @Test
+    void scheduledMaintenance_CreatesAndDropsPartitionsUnderTheLock() {
+        when(maintenanceLock.runExclusively(eq("mailbox-partitions"), any())).thenAnswer(invocation -> {
+            invocation.getArgument(1, Runnable.class).run();
+            return true;
+        });
+        givenPartitions(
+                partition("mailbox_p2000010100", LocalDateTime.of(2000, 1, 1, 1, 0)),
+                partition("mailbox_default", null));
+
+        manager.scheduledMaintenance();
+
+        verify(jdbcTemplate, atLeastOnce()).execute(startsWith("CREATE TABLE IF NOT EXISTS mailbox_p"));
+        verify(jdbcTemplate).execute("ALTER TABLE mailbox DETACH PARTITION mailbox_p2000010100");
+        verify(jdbcTemplate).execute("DROP TABLE mailbox_p2000010100");
+    }
+
+    @Test
+    void dropPartitionsBefore_DoesNothingOnAPlainTable() {
+        when(jdbcTemplate.queryForList(MailboxPartitionManager.RELKIND_SQL, String.class)).thenReturn(List.of("r"));
+
+        assertEquals(0, manager.dropPartitionsBefore(NOW));
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void partitionTable_DoesNothingOutsidePostgres() {
+        when(jdbcTemplate.queryForList(MailboxPartitionManager.RELKIND_SQL, String.class))
+                .thenThrow(new BadSqlGrammarException("relkind", MailboxPartitionManager.RELKIND_SQL,
+                        new SQLException("no pg_catalog")));
+
+        assertFalse(manager.partitionTable());
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void upperBound_ParsesRangeBoundsAndIgnoresDefault() {
+        assertEquals(Optional.of(LocalDateTime.of(2026, 10, 19, 15, 0)), MailboxPartitionManager.upperBound(
+                "FOR VALUES FROM ('2026-10-19 14:00:00') TO ('2026-10-19 15:00:00')"));
+        assertEquals(Optional.of(LocalDateTime.of(2026, 10, 19, 15, 0)), MailboxPartitionManager.upperBound(
+                "FOR VALUES FROM (MINVALUE) TO ('2026-10-19 15:00:00')"));
+        assertTrue(MailboxPartitionManager.upperBound("DEFAULT").isEmpty());
+    }
+}
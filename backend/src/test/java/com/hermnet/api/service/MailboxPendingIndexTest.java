@@ -0,0 +1,190 @@
+package com.hermnet.api.service;
+
+import com.hermnet.api.repository.MailboxDao;
+import com.hermnet.api.repository.MailboxSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MailboxPendingIndexTest {
+
+    private static final String ME = "HNET-ME";
+    private static final String OTHER = "HNET-OTHER";
+
+    @Mock
+    private MailboxDao mailboxDao;
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private MailboxPendingIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new MailboxPendingIndex(mailboxDao, new SimpleMeterRegistry(), 10_000, clock::get);
+    }
+
+    private void advanceSeconds(long seconds) {
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Test
+    void rebuild_AnswersEveryMailboxFromOneAggregateQuery() {
+        when(mailboxDao.summarizeMailboxes()).thenReturn(List.of(new MailboxSummary(OTHER, 2, 40)));
+
+        index.rebuild();
+
+        assertTrue(index.isKnownEmpty(ME));
+        assertFalse(index.isKnownEmpty(OTHER));
+        verify(mailboxDao, never()).summarizeMailbox(any());
+    }
+
+    @Test
+    void etag_IsDerivedFromCountAndNewestId() {
+        when(mailboxDao.summarizeMailboxes()).thenReturn(List.of());
+        index.rebuild();
+        assertEquals("\"0.0\"", index.etag(ME));
+
+        index.recordSend(ME, 36);
+        index.recordSend(ME, 40);
+        assertFalse(index.isKnownEmpty(ME));
+        assertEquals("\"2.14\"", index.etag(ME));
+
+        index.recordAck(ME, List.of(36L));
+        assertEquals("\"1.14\"", index.etag(ME));
+        index.recordAck(ME, List.of(40L));
+        assertTrue(index.isKnownEmpty(ME));
+        assertEquals("\"0.0\"", index.etag(ME));
+        verify(mailboxDao, never()).summarizeMailbox(any());
+    }
+
+    @Test
+    void etag_MatchesWhatAnotherNodeCountsFromTheDatabase() {
+        when(mailboxDao.summarizeMailboxes()).thenReturn(List.of());
+        index.rebuild();
+        index.recordSend(ME, 36);
+        index.recordSend(ME, 40);
+
+        MailboxPendingIndex otherNode = new MailboxPendingIndex(mailboxDao, new SimpleMeterRegistry(), 10_000,
+                clock::get);
+        when(mailboxDao.summarizeMailbox(ME)).thenReturn(Optional.of(new MailboxSummary(ME, 2, 40)));
+
+        assertEquals(index.etag(ME), otherNode.etag(ME));
+    }
+
+    @Test
+    void emptyEntries_AreDroppedOnceStale() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        index = new MailboxPendingIndex(mailboxDao, meterRegistry, 10_000, clock::get);
+        when(mailboxDao.summarizeMailboxes()).thenReturn(List.of(new MailboxSummary(OTHER, 1, 7)));
+        index.rebuild();
+
+        index.recordSend(ME, 9);
+        index.recordAck(ME, List.of(9L));
+        index.pruneEmpty();
+        assertEquals(2.0, meterRegistry.get("hermnet.mailbox.pending_index.entries").gauge().value());
+
+        advanceSeconds(11);
+        index.pruneEmpty();
+
+        assertEquals(1.0, meterRegistry.get("hermnet.mailbox.pending_index.entries").gauge().value());
+        assertTrue(index.isKnownEmpty(ME));
+        verify(mailboxDao).summarizeMailbox(ME);
+    }
+
+    @Test
+    void emptyMailbox_CostsAtMostOneQueryPerWindow() {
+        when(mailboxDao.summarizeMailboxes()).thenReturn(List.of());
+        index.rebuild();
+        when(mailboxDao.summarizeMailbox(ME)).thenReturn(Optional.empty());
+
+        advanceSeconds(11);
+        assertTrue(index.isKnownEmpty(ME));
+        assertTrue(index.isKnownEmpty(ME));
+        assertEquals("\"0.0\"", index.etag(ME));
+        verify(mailboxDao, times(1)).summarizeMailbox(ME);
+
+        advanceSeconds(11);
+        assertTrue(index.isKnownEmpty(ME));
+        assertTrue(index.isKnownEmpty(ME));
+        verify(mailboxDao, times(2)).summarizeMailbox(ME);
+    }
+
+    @Test
+    void sendWithoutId_OrAckOfTheNewest_IsRecountedOnNextLookup() {
+        when(mailboxDao.summarizeMailboxes()).thenReturn(List.of(new MailboxSummary(ME, 2, 10)));
+        index.rebuild();
+        when(mailboxDao.summarizeMailbox(ME)).thenReturn(
+                Optional.of(new MailboxSummary(ME, 3, 12)), Optional.of(new MailboxSummary(ME, 2, 11)));
+
+        index.recordSend(ME, 0);
+        assertEquals("\"3.c\"", index.etag(ME));
+        index.recordAck(ME, List.of(12L));
+        assertEquals("\"2.b\"", index.etag(ME));
+        assertEquals("\"2.b\"", index.etag(ME));
+
+        verify(mailboxDao, times(2)).summarizeMailbox(ME);
+    }
+
+    @Test
+    void staleEntry_IsRecountedOnce() {
+        when(mailboxDao.summarizeMailboxes()).thenReturn(List.of(new MailboxSummary(ME, 1, 10)));
+        index.rebuild();
+        String before = index.etag(ME);
+
+        advanceSeconds(11);
+        when(mailboxDao.summarizeMailbox(ME)).thenReturn(Optional.of(new MailboxSummary(ME, 1, 10)));
+        assertEquals(before, index.etag(ME));
+
+        advanceSeconds(11);
+        // Another node stored a message and the client acked the old one there.
+        when(mailboxDao.summarizeMailbox(ME)).thenReturn(Optional.of(new MailboxSummary(ME, 1, 12)));
+        String after = index.etag(ME);
+        assertNotEquals(before, after);
+        assertEquals(after, index.etag(ME));
+        verify(mailboxDao, times(2)).summarizeMailbox(ME);
+    }
+
+    @Test
+    void withoutRebuild_MailboxesAreCountedOnDemand() {
+        when(mailboxDao.summarizeMailbox(ME)).thenReturn(Optional.of(new MailboxSummary(ME, 1, 10)));
+        when(mailboxDao.summarizeMailbox(OTHER)).thenReturn(Optional.empty());
+
+        assertFalse(index.isKnownEmpty(ME));
+        assertFalse(index.isKnownEmpty(ME));
+        assertTrue(index.isKnownEmpty(OTHER));
+        assertTrue(index.isKnownEmpty(OTHER));
+
+        verify(mailboxDao, times(1)).summarizeMailbox(ME);
+        verify(mailboxDao, times(1)).summarizeMailbox(OTHER);
+    }
+
+    @Test
+    void recordAck_OfMoreThanCounted_ForcesARecount() {
+        when(mailboxDao.summarizeMailboxes()).thenReturn(List.of(new MailboxSummary(ME, 1, 10)));
+        index.rebuild();
+        when(mailboxDao.summarizeMailbox(ME)).thenReturn(Optional.of(new MailboxSummary(ME, 1, 30)));
+
+        index.recordAck(ME, List.of(10L, 20L));
+
+        assertFalse(index.isKnownEmpty(ME));
+        verify(mailboxDao).summarizeMailbox(ME);
+    }
+}
@@ -0,0 +1,432 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.hermnet.api.dto.SendMessageRequest;
+import com.hermnet.api.model.Message;
+import com.hermnet.api.repository.MailboxHotTier;
+import com.hermnet.api.repository.MailboxJdbcRepository;
+import com.hermnet.api.repository.MessageRepository;
+import com.hermnet.api.repository.PayloadBlobStore;
+import com.hermnet.api.repository.UserRepository;
+
+@ExtendWith(MockitoExtension.class)
+class MailboxServiceTest {
+
+    private static final String ME = "HNET-ME";
+    private static final String OTHER = "HNET-OTHER";
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private MailboxWaitRegistry mailboxWaitRegistry;
+
+    @Mock
+    private MailboxJdbcRepository mailboxJdbcRepository;
+
+    @Mock
+    private ObjectProvider<MailboxGroupCommitter> mailboxGroupCommitter;
+
+    @Mock
+    private PayloadBlobStore payloadBlobStore;
+
+    @Mock
+    private ObjectProvider<MailboxHotTier> mailboxHotTier;
+
+    @Mock
+    private ObjectProvider<MailboxPendingIndex> mailboxPendingIndex;
+
+    private MailboxService service;
+    private RecordingWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        service = new MailboxService(messageRepository, userRepository, notificationService, mailboxWaitRegistry,
+                mailboxJdbcRepository, mailboxGroupCommitter, payloadBlobStore, mailboxHotTier,
+                mailboxPendingIndex);
+        writer = new RecordingWriter();
+    }
+
+    /** Makes the mocked cursor yield one row per size, with ids starting at {@code firstId}. */
+    private void givenRows(long firstId, int... sizes) {
+        doAnswer(invocation -> {
+            MailboxJdbcRepository.RowVisitor visitor = invocation.getArgument(3);
+            int maxRows = invocation.getArgument(2);
+            for (int i = 0; i < sizes.length && i < maxRows; i++) {
+                if (!visitor.visit(firstId + i, LocalDateTime.now(), sizes[i],
+                        new ByteArrayInputStream(new byte[sizes[i]]))) {
+                    break;
+                }
+            }
+            return null;
+        }).when(mailboxJdbcRepository).scanAfter(eq(ME), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void fetchAfter_LoadsFileBackedPayloads() {
+        String hash = "ab".repeat(32);
+        Message stored = Message.builder().messageId(7L).recipientHash(ME)
+                .payload(new byte[0]).payloadHash(hash).payloadLength(3L).build();
+        Message inline = Message.builder().messageId(8L).recipientHash(ME).payload(new byte[] { 9 }).build();
+        when(messageRepository.findByRecipientHashAndMessageIdGreaterThanOrderByMessageIdAsc(
+                eq(ME), eq(0L), any())).thenReturn(List.of(stored, inline));
+        when(payloadBlobStore.read(hash)).thenReturn(new byte[] { 1, 2, 3 });
+
+        List<Message> messages = service.fetchAfter(ME, 0, 10);
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, messages.get(0).getPayload());
+        assertArrayEquals(new byte[] { 9 }, messages.get(1).getPayload());
+    }
+
+    @Test
+    void streamPage_StopsAtMessageLimitAndReportsMore() throws IOException {
+        givenRows(1, 10, 10, 10);
+
+        service.streamPage(ME, 0, Long.MAX_VALUE, 2, 1_000, writer);
+
+        assertEquals(List.of(1L, 2L), writer.ids);
+        assertTrue(writer.hasMore);
+        assertEquals(2L, MailboxCursor.decode(writer.nextCursor));
+    }
+
+    @Test
+    void streamPage_StopsBeforeExceedingByteBudget() throws IOException {
+        givenRows(6, 40, 40, 40);
+
+        service.streamPage(ME, 5, Long.MAX_VALUE, 10, 100, writer);
+
+        assertEquals(List.of(6L, 7L), writer.ids);
+        assertTrue(writer.hasMore);
+        assertEquals(7L, MailboxCursor.decode(writer.nextCursor));
+    }
+
+    @Test
+    void streamPage_SendsOversizedMessageAlone() throws IOException {
+        givenRows(1, 500, 1);
+
+        service.streamPage(ME, 0, Long.MAX_VALUE, 10, 100, writer);
+
+        assertEquals(List.of(1L), writer.ids);
+        assertTrue(writer.hasMore);
+    }
+
+    @Test
+    void streamPage_CopiesPayloadsAndFinishesWhenMailboxDrained() throws IOException {
+        givenRows(3, 4);
+
+        service.streamPage(ME, 2, Long.MAX_VALUE, 10, 100, writer);
+
+        assertArrayEquals(new byte[4], writer.payloads.get(0));
+        assertFalse(writer.hasMore);
+        assertTrue(writer.ended);
+    }
+
+    @Test
+    void streamPage_HoldsBackMessagesPastTheCommitHorizon() throws IOException {
+        givenRows(1, 10, 10, 10);
+
+        service.streamPage(ME, 0, 3, 10, 1_000, writer);
+
+        assertEquals(List.of(1L, 2L), writer.ids);
+        assertTrue(writer.hasMore);
+        assertEquals(2L, MailboxCursor.decode(writer.nextCursor));
+    }
+
+    @Test
+    void streamPage_EmptyMailboxHasNoCursorUntilFirstMessage() throws IOException {
+        givenRows(1);
+
+        service.streamPage(ME, 0, Long.MAX_VALUE, 10, 100, writer);
+        assertNull(writer.nextCursor);
+
+        writer = new RecordingWriter();
+        service.streamPage(ME, 9, Long.MAX_VALUE, 10, 100, writer);
+        assertEquals(9L, MailboxCursor.decode(writer.nextCursor));
+    }
+
+    @Test
+    void streamPage_ServesCachedPayloadsFromHotTier() throws IOException {
+        MailboxHotTier hotTier = new MailboxHotTier(new SimpleMeterRegistry(), 1 << 16, 64, 1 << 10);
+        hotTier.put(4L, new byte[] { 4 });
+        hotTier.put(5L, new byte[] { 5, 5 });
+        when(mailboxHotTier.getIfAvailable()).thenReturn(hotTier);
+        when(mailboxJdbcRepository.listAfter(ME, 3L, 2)).thenReturn(List.of(
+                new MailboxJdbcRepository.StoredMessage(4L, LocalDateTime.now(), 1, null),
+                new MailboxJdbcRepository.StoredMessage(5L, LocalDateTime.now(), 2, null)));
+
+        service.streamPage(ME, 3, Long.MAX_VALUE, 1, 100, writer);
+
+        assertEquals(List.of(4L), writer.ids);
+        assertArrayEquals(new byte[] { 4 }, writer.payloads.get(0));
+        assertTrue(writer.hasMore);
+        verify(mailboxJdbcRepository, never()).scanAfter(any(), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void streamPage_FallsBackToCursorWhenHotTierMisses() throws IOException {
+        MailboxHotTier hotTier = new MailboxHotTier(new SimpleMeterRegistry(), 1 << 16, 64, 1 << 10);
+        hotTier.put(1L, new byte[] { 1 });
+        when(mailboxHotTier.getIfAvailable()).thenReturn(hotTier);
+        when(mailboxJdbcRepository.listAfter(ME, 0L, 11)).thenReturn(List.of(
+                new MailboxJdbcRepository.StoredMessage(1L, LocalDateTime.now(), 1, null),
+                new MailboxJdbcRepository.StoredMessage(2L, LocalDateTime.now(), 4, null)));
+        givenRows(1, 1, 4);
+
+        service.streamPage(ME, 0, Long.MAX_VALUE, 10, 100, writer);
+
+        assertEquals(List.of(1L, 2L), writer.ids);
+        assertArrayEquals(new byte[4], writer.payloads.get(1));
+        assertFalse(writer.hasMore);
+    }
+
+    @Test
+    void listOwnPayloads_PollingAnEmptyMailboxSkipsTheDatabase() {
+        MailboxPendingIndex index = new MailboxPendingIndex(messageRepository, new SimpleMeterRegistry(), 60_000,
+                () -> 0L);
+        when(mailboxPendingIndex.getIfAvailable()).thenReturn(index);
+        when(messageRepository.summarizeMailboxes()).thenReturn(List.of());
+        Message stored = Message.builder().messageId(1L).recipientHash(ME).payload(new byte[] { 1 }).build();
+        when(messageRepository.save(any())).thenReturn(stored);
+        when(messageRepository.findByRecipientHashOrderByCreatedAtDesc(ME)).thenReturn(List.of(stored));
+        when(payloadBlobStore.store(any())).thenReturn(new PayloadBlobStore.StoredPayload(new byte[] { 1 }, null, null));
+        index.rebuild();
+
+        // A client polling every 2 seconds for ten minutes.
+        for (int poll = 0; poll < 300; poll++) {
+            assertTrue(service.listOwnPayloads(ME).isEmpty());
+        }
+        service.send(ME, new byte[] { 1 });
+        assertEquals(1, service.listOwnPayloads(ME).size());
+        when(mailboxJdbcRepository.deleteCreatedUpTo(ME, null)).thenReturn(List.of(1L));
+        service.ackCreatedUpTo(ME, null);
+        for (int poll = 0; poll < 300; poll++) {
+            assertTrue(service.listOwnPayloads(ME).isEmpty());
+        }
+
+        verify(messageRepository, times(1)).summarizeMailboxes();
+        verify(messageRepository, never()).summarizeMailbox(any());
+        verify(messageRepository, times(1)).findByRecipientHashOrderByCreatedAtDesc(ME);
+    }
+
+    /** Starts {@code count} threads calling {@link MailboxService#listPayloads} and waits until all are blocked. */
+    private List<CompletableFuture<List<byte[]>>> concurrentReads(int count) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        List<CompletableFuture<List<byte[]>>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<List<byte[]>> result = new CompletableFuture<>();
+            Thread thread = new Thread(() -> result.complete(service.listOwnPayloads(ME)));
+            thread.start();
+            threads.add(thread);
+            results.add(result);
+        }
+        for (Thread thread : threads) {
+            // Parked on the latch (the query) or on the shared future (everyone else).
+            while (LockSupport.getBlocker(thread) == null && thread.isAlive()) {
+                Thread.sleep(1);
+            }
+        }
+        return results;
+    }
+
+    @Test
+    void listPayloads_ConcurrentReadsForOneRecipientShareOneQuery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger queries = new AtomicInteger();
+        when(messageRepository.findByRecipientHashOrderByCreatedAtDesc(ME)).thenAnswer(invocation -> {
+            queries.incrementAndGet();
+            release.await();
+            return List.of(Message.builder().messageId(1L).recipientHash(ME).payload(new byte[] { 7 }).build());
+        });
+
+        List<CompletableFuture<List<byte[]>>> results = concurrentReads(16);
+        release.countDown();
+
+        for (CompletableFuture<List<byte[]>> result : results) {
+            assertArrayEquals(new byte[] { 7 }, result.get(5, TimeUnit.SECONDS).get(0));
+        }
+        assertEquals(1, queries.get());
+
+        service.listPayloads(ME);
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void listPayloads_ReadAfterASendDoesNotJoinTheOlderQuery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger queries = new AtomicInteger();
+        when(messageRepository.findByRecipientHashOrderByCreatedAtDesc(ME)).thenAnswer(invocation -> {
+            if (queries.incrementAndGet() == 1) {
+                release.await();
+            }
+            return List.of();
+        });
+        when(payloadBlobStore.store(any())).thenReturn(new PayloadBlobStore.StoredPayload(new byte[] { 1 }, null, null));
+
+        List<CompletableFuture<List<byte[]>>> before = concurrentReads(1);
+        service.send(ME, new byte[] { 1 });
+        service.listPayloads(ME);
+        release.countDown();
+        before.get(0).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, queries.get());
+    }
+
+    /**
+     * Runs {@code send} while a read of the old mailbox is blocked, and polls
+     * at the moment the pending index learns of the new message, which is
+     * when the ETag changes: that poll must not get the older read's result.
+     */
+    private void assertPollSeeingTheNewETagReadsAgain(Runnable send) throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger queries = new AtomicInteger();
+        when(messageRepository.findByRecipientHashOrderByCreatedAtDesc(ME)).thenAnswer(invocation -> {
+            if (queries.incrementAndGet() == 1) {
+                release.await();
+                return List.of();
+            }
+            return List.of(Message.builder().messageId(1L).recipientHash(ME).payload(new byte[] { 1 }).build());
+        });
+        MailboxPendingIndex index = mock(MailboxPendingIndex.class);
+        when(mailboxPendingIndex.getIfAvailable()).thenReturn(index);
+        List<CompletableFuture<List<byte[]>>> polls = new ArrayList<>();
+        doAnswer(invocation -> {
+            CompletableFuture<List<byte[]>> poll = new CompletableFuture<>();
+            Thread thread = new Thread(() -> poll.complete(service.listOwnPayloads(ME)));
+            thread.start();
+            // Let the poll either finish its own query or park on the older one before the send goes on.
+            while (LockSupport.getBlocker(thread) == null && thread.isAlive()) {
+                Thread.sleep(1);
+            }
+            polls.add(poll);
+            return null;
+        }).when(index).recordSend(eq(ME), anyLong());
+
+        List<CompletableFuture<List<byte[]>>> before = concurrentReads(1);
+        send.run();
+        try {
+            assertEquals(1, polls.size());
+            assertEquals(1, polls.get(0).get(5, TimeUnit.SECONDS).size());
+        } finally {
+            release.countDown();
+        }
+        assertTrue(before.get(0).get(5, TimeUnit.SECONDS).isEmpty());
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void send_DetachesOlderReadsBeforeTheETagChanges() throws Exception {
+        when(payloadBlobStore.store(any())).thenReturn(new PayloadBlobStore.StoredPayload(new byte[] { 1 }, null, null));
+
+        assertPollSeeingTheNewETagReadsAgain(() -> service.send(ME, new byte[] { 1 }));
+    }
+
+    @Test
+    void sendBatch_DetachesOlderReadsBeforeTheETagChanges() throws Exception {
+        when(mailboxJdbcRepository.insertBatch(any())).thenReturn(new long[] { 1 });
+
+        assertPollSeeingTheNewETagReadsAgain(
+                () -> service.sendBatch(List.of(new SendMessageRequest(ME, new byte[] { 1 }))));
+    }
+
+    @Test
+    void send_ThroughTheGroupCommitter_RecordsTheCommittedId() {
+        MailboxGroupCommitter committer = mock(MailboxGroupCommitter.class);
+        when(mailboxGroupCommitter.getIfAvailable()).thenReturn(committer);
+        when(committer.submit(any())).thenReturn(CompletableFuture.completedFuture(77L));
+        MailboxPendingIndex index = mock(MailboxPendingIndex.class);
+        when(mailboxPendingIndex.getIfAvailable()).thenReturn(index);
+
+        service.send(ME, new byte[] { 1 });
+
+        verify(index).recordSend(ME, 77L);
+    }
+
+    @Test
+    void sendBatch_RecordsEachInsertedId() {
+        when(mailboxJdbcRepository.insertBatch(any())).thenReturn(new long[] { 5, 6 });
+        MailboxPendingIndex index = mock(MailboxPendingIndex.class);
+        when(mailboxPendingIndex.getIfAvailable()).thenReturn(index);
+
+        assertEquals(2, service.sendBatch(List.of(new SendMessageRequest(ME, new byte[] { 1 }),
+                new SendMessageRequest(OTHER, new byte[] { 2 }))));
+
+        verify(index).recordSend(ME, 5L);
+        verify(index).recordSend(OTHER, 6L);
+    }
+
+    @Test
+    void cursor_RejectsGarbage() {
+        assertThrows(IllegalArgumentException.class, () -> MailboxCursor.decode("%%%"));
+        assertThrows(IllegalArgumentException.class, () -> MailboxCursor.decode("AAAA"));
+        assertEquals(0L, MailboxCursor.decode(""));
+    }
+
+    private static final class RecordingWriter implements MailboxPageWriter {
+
+        private final List<Long> ids = new ArrayList<>();
+        private final List<byte[]> payloads = new ArrayList<>();
+        private String nextCursor;
+        private boolean hasMore;
+        private boolean ended;
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void message(long id, LocalDateTime createdAt, long length, InputStream payload) throws IOException {
+            ids.add(id);
+            payloads.add(payload.readAllBytes());
+        }
+
+        @Override
+        public void end(String nextCursor, boolean hasMore) {
+            this.nextCursor = nextCursor;
+            this.hasMore = hasMore;
+            this.ended = true;
+        }
+    }
+}
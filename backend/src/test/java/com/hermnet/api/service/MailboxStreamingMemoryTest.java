@@ -0,0 +1,197 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hermnet.api.model.Snowflake;
+import com.hermnet.api.repository.MailboxHotTier;
+import com.hermnet.api.repository.MailboxJdbcRepository;
+import com.hermnet.api.repository.PayloadBlobStore;
+
+/**
+ * Syncs a mailbox several times larger than the heap through the streaming
+ * path in a forked JVM with a small {@code -Xmx}. Materializing the mailbox
+ * would end in {@link OutOfMemoryError}; streaming must finish.
+ *
+ * Runs with {@code mvn test -Pbenchmarks}. Defaults: 128 MB mailbox, 48 MB
+ * heap; add {@code -Dhermnet.memtest.mailbox-mb=500} for the full-size check.
+ */
+@Tag("benchmark")
+class MailboxStreamingMemoryTest {
+
+    private static final String RECIPIENT = "HNET-MEMTEST";
+    private static final int PAYLOAD_BYTES = 1024 * 1024;
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void sync_StreamsMailboxLargerThanHeap() throws Exception {
+        int mailboxMb = Integer.getInteger("hermnet.memtest.mailbox-mb", 128);
+        String heap = System.getProperty("hermnet.memtest.heap", "48m");
+        String url = "jdbc:h2:file:" + dataDir.resolve("mailbox") + ";CACHE_SIZE=2048";
+        Path result = dataDir.resolve("result");
+
+        Process child = new ProcessBuilder(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx" + heap,
+                "-cp", System.getProperty("java.class.path"),
+                SmallHeapSync.class.getName(), url, Integer.toString(mailboxMb), result.toString()))
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(child.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(child.waitFor(10, TimeUnit.MINUTES), "Sync did not finish");
+
+        assertEquals(0, child.exitValue(), output);
+        assertEquals(Integer.toString(mailboxMb), Files.readString(result).strip(), output);
+    }
+
+    /**
+     * Child process: fills an on-disk mailbox, then pages through it with
+     * {@link MailboxService#streamPage} into a byte-counting sink and writes
+     * the number of synced messages to the result file.
+     */
+    static final class SmallHeapSync {
+
+        /** Disabled: every payload is inline, as in the mailbox table. */
+        private static final PayloadBlobStore BLOB_STORE = new PayloadBlobStore(Path.of("unused"), false, 1);
+
+        public static void main(String[] args) throws Exception {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL(args[0]);
+            int messages = Integer.parseInt(args[1]);
+            fill(dataSource, messages);
+
+            MailboxService service = new MailboxService(null, null, null, null,
+                    new MailboxJdbcRepository(dataSource, new Snowflake(0), BLOB_STORE, null, 16), null, BLOB_STORE,
+                    new StaticListableBeanFactory().getBeanProvider(MailboxHotTier.class),
+                    new StaticListableBeanFactory().getBeanProvider(MailboxPendingIndex.class));
+            ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+            CountingSink sink = new CountingSink();
+
+            long afterId = 0;
+            int synced = 0;
+            boolean hasMore = true;
+            while (hasMore) {
+                PageEnd end = new PageEnd(new JsonMailboxPageWriter(objectMapper, sink));
+                service.streamPage(RECIPIENT, afterId, Long.MAX_VALUE, 100, 8L * PAYLOAD_BYTES, end);
+                synced += end.messages;
+                hasMore = end.hasMore;
+                afterId = end.nextCursor != null ? MailboxCursor.decode(end.nextCursor) : afterId;
+            }
+            Files.writeString(Path.of(args[2]), Integer.toString(synced));
+        }
+
+        private static void fill(JdbcDataSource dataSource, int messages) throws Exception {
+            try (Connection connection = dataSource.getConnection();
+                    Statement ddl = connection.createStatement()) {
+                ddl.execute("CREATE TABLE mailbox (message_id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                        + "recipient_hash VARCHAR(64) NOT NULL, payload BLOB NOT NULL, payload_hash VARCHAR(64), "
+                        + "payload_length BIGINT, created_at TIMESTAMP NOT NULL, expires_at TIMESTAMP)");
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO mailbox (recipient_hash, payload, created_at) VALUES (?, ?, ?)")) {
+                    for (int i = 0; i < messages; i++) {
+                        insert.setString(1, RECIPIENT);
+                        insert.setBinaryStream(2, new PatternStream(PAYLOAD_BYTES), PAYLOAD_BYTES);
+                        insert.setObject(3, LocalDateTime.now());
+                        insert.executeUpdate();
+                    }
+                }
+            }
+        }
+    }
+
+    /** Delegates to the JSON writer and remembers how the page ended. */
+    private static final class PageEnd implements MailboxPageWriter {
+
+        private final MailboxPageWriter delegate;
+        private int messages;
+        private String nextCursor;
+        private boolean hasMore;
+
+        private PageEnd(MailboxPageWriter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            delegate.begin();
+        }
+
+        @Override
+        public void message(long id, LocalDateTime createdAt, long length, InputStream payload) throws IOException {
+            delegate.message(id, createdAt, length, payload);
+            messages++;
+        }
+
+        @Override
+        public void end(String nextCursor, boolean hasMore) throws IOException {
+            delegate.end(nextCursor, hasMore);
+            this.nextCursor = nextCursor;
+            this.hasMore = hasMore;
+        }
+    }
+
+    /** Generates payload bytes on the fly so filling the mailbox needs no heap either. */
+    private static final class PatternStream extends InputStream {
+
+        private int remaining;
+
+        private PatternStream(int length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            return remaining-- > 0 ? remaining & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = Math.min(length, remaining);
+            for (int i = 0; i < n; i++) {
+                buffer[offset + i] = (byte) (remaining - i);
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+
+    private static final class CountingSink extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+    }
+}
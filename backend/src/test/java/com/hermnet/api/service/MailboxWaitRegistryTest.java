@@ -0,0 +1,67 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MailboxWaitRegistryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private MailboxWaitRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new MailboxWaitRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void signal_RunsListenersOfThatRecipientOnly() throws Exception {
+        CountDownLatch woken = new CountDownLatch(2);
+        AtomicInteger otherCalls = new AtomicInteger();
+        registry.subscribe("HNET-A", woken::countDown);
+        registry.subscribe("HNET-A", woken::countDown);
+        registry.subscribe("HNET-B", otherCalls::incrementAndGet);
+
+        registry.signal("HNET-A");
+
+        assertTrue(woken.await(2, TimeUnit.SECONDS));
+        assertEquals(0, otherCalls.get());
+    }
+
+    @Test
+    void cancel_StopsFurtherWakeUpsAndUpdatesGauge() throws Exception {
+        CountDownLatch woken = new CountDownLatch(1);
+        MailboxWaitRegistry.Subscription subscription = registry.subscribe("HNET-A", woken::countDown);
+        assertEquals(1.0, meterRegistry.get("hermnet.mailbox.waiters").gauge().value());
+
+        subscription.cancel();
+        subscription.cancel();
+        registry.signal("HNET-A");
+
+        assertFalse(woken.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, registry.activeSubscriptions());
+    }
+
+    @Test
+    void signal_WithoutListeners_IsNoOp() {
+        registry.signal("HNET-NOBODY");
+
+        assertEquals(0, registry.activeSubscriptions());
+    }
+}
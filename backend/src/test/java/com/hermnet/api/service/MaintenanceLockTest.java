@@ -0,0 +1,115 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class MaintenanceLockTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private DatabaseMetaData metaData;
+
+    @Mock
+    private PreparedStatement tryLock;
+
+    @Mock
+    private PreparedStatement unlock;
+
+    @Mock
+    private ResultSet tryLockResult;
+
+    @Mock
+    private ResultSet unlockResult;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private MaintenanceLock lock;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        lock = new MaintenanceLock(jdbcTemplate, meterRegistry, 7);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0, ConnectionCallback.class).doInConnection(connection));
+        when(connection.getMetaData()).thenReturn(metaData);
+    }
+
+    private void givenPostgres(boolean lockFree) throws Exception {
+        when(metaData.getDatabaseProductName()).thenReturn("PostgreSQL");
+        when(connection.prepareStatement(MaintenanceLock.TRY_LOCK_SQL)).thenReturn(tryLock);
+        when(tryLock.executeQuery()).thenReturn(tryLockResult);
+        when(tryLockResult.next()).thenReturn(true);
+        when(tryLockResult.getBoolean(1)).thenReturn(lockFree);
+    }
+
+    private double held() {
+        return meterRegistry.get("hermnet.maintenance.lock.held").tag("job", "purge").tag("node", "7").gauge().value();
+    }
+
+    @Test
+    void runExclusively_RunsWhileHoldingTheLockAndReleasesIt() throws Exception {
+        givenPostgres(true);
+        when(connection.prepareStatement(MaintenanceLock.UNLOCK_SQL)).thenReturn(unlock);
+        when(unlock.executeQuery()).thenReturn(unlockResult);
+        AtomicBoolean heldDuringTask = new AtomicBoolean();
+
+        assertTrue(lock.runExclusively("purge", () -> heldDuringTask.set(held() == 1.0)));
+
+        assertTrue(heldDuringTask.get());
+        assertEquals(0.0, held());
+        verify(tryLock).setInt(1, MaintenanceLock.LOCK_NAMESPACE);
+        verify(tryLock).setInt(2, "purge".hashCode());
+        verify(unlock).setInt(2, "purge".hashCode());
+        verify(unlock).executeQuery();
+    }
+
+    @Test
+    void runExclusively_SkipsWhenAnotherNodeHoldsTheLock() throws Exception {
+        givenPostgres(false);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        assertFalse(lock.runExclusively("purge", () -> ran.set(true)));
+
+        assertFalse(ran.get());
+        verify(connection, never()).prepareStatement(MaintenanceLock.UNLOCK_SQL);
+        assertEquals(1.0, meterRegistry.get("hermnet.maintenance.runs").tag("result", "skipped").counter().count());
+    }
+
+    @Test
+    void runExclusively_RunsUnguardedWithoutAdvisoryLocks() throws Exception {
+        when(metaData.getDatabaseProductName()).thenReturn("H2");
+        AtomicBoolean ran = new AtomicBoolean();
+
+        assertTrue(lock.runExclusively("purge", () -> ran.set(true)));
+
+        assertTrue(ran.get());
+        verify(connection, never()).prepareStatement(any());
+    }
+}
@@ -0,0 +1,98 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.TaskScheduler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationServiceTest {
+
+    @Mock
+    private PushBatchDispatcher pushBatchDispatcher;
+
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    private SimpleMeterRegistry meterRegistry;
+    private NotificationService service;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new NotificationService(pushBatchDispatcher, taskScheduler, meterRegistry, 60_000);
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("hermnet.push.sync").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void burstToOneToken_SendsOnceAndSchedulesSingleTrailingPush() {
+        for (int i = 0; i < 50; i++) {
+            service.sendSyncNotification("token-a");
+        }
+
+        assertEquals(1, count("sent"));
+        assertEquals(49, count("coalesced"));
+        verify(pushBatchDispatcher, times(1)).enqueue("token-a");
+        verify(taskScheduler, times(1)).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void trailingPush_IsSentWhenWindowCloses() {
+        service.sendSyncNotification("token-a");
+        service.sendSyncNotification("token-a");
+
+        ArgumentCaptor<Runnable> trailing = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).schedule(trailing.capture(), any(Instant.class));
+        trailing.getValue().run();
+
+        assertEquals(2, count("sent"));
+        assertEquals(1, count("coalesced"));
+        verify(pushBatchDispatcher, times(2)).enqueue("token-a");
+    }
+
+    @Test
+    void differentTokens_AreNotCoalescedTogether() {
+        service.sendSyncNotification("token-a");
+        service.sendSyncNotification("token-b");
+
+        assertEquals(2, count("sent"));
+        assertEquals(0, count("coalesced"));
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void zeroWindow_DisablesCoalescing() {
+        service = new NotificationService(pushBatchDispatcher, taskScheduler, meterRegistry, 0);
+
+        service.sendSyncNotification("token-a");
+        service.sendSyncNotification("token-a");
+
+        assertEquals(2, count("sent"));
+        assertEquals(0, service.openWindowCount());
+    }
+
+    @Test
+    void blankToken_IsIgnored() {
+        service.sendSyncNotification("");
+        service.sendSyncNotification(null);
+
+        assertEquals(0, count("sent"));
+        verify(pushBatchDispatcher, never()).enqueue(any());
+    }
+}
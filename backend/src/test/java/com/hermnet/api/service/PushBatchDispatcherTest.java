@@ -0,0 +1,203 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.TaskScheduler;
+
+import com.hermnet.api.service.PushGateway.Result;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class PushBatchDispatcherTest {
+
+    @Mock
+    private PushGateway pushGateway;
+
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    @Mock
+    private PushTokenPruner pushTokenPruner;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PushCircuitBreaker circuitBreaker;
+    private PushBatchDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreaker = new PushCircuitBreaker(meterRegistry, 2, 30);
+        dispatcher = newDispatcher(10_000);
+    }
+
+    private PushBatchDispatcher newDispatcher(int queueCapacity) {
+        return new PushBatchDispatcher(pushGateway, taskScheduler, circuitBreaker, pushTokenPruner,
+                meterRegistry, 500, 5, queueCapacity, 3, 100);
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("hermnet.push.delivery").tag("result", result).counter().count();
+    }
+
+    private static List<PushBatchDispatcher.PendingPush> pushes(String... tokens) {
+        List<PushBatchDispatcher.PendingPush> pushes = new ArrayList<>();
+        for (String token : tokens) {
+            pushes.add(new PushBatchDispatcher.PendingPush(token, 1));
+        }
+        return pushes;
+    }
+
+    @Test
+    void dispatch_MapsPerMessageResultsBackToTokens() {
+        when(pushGateway.sendSync(List.of("ok-token", "transient-token", "rejected-token")))
+                .thenReturn(List.of(Result.DELIVERED, Result.RETRYABLE, Result.REJECTED));
+
+        dispatcher.dispatch(pushes("ok-token", "transient-token", "rejected-token"));
+
+        assertEquals(1, count("delivered"));
+        assertEquals(1, count("retried"));
+        assertEquals(1, count("failed"));
+        verify(taskScheduler, times(1)).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void dispatch_RetriesWholeBatchWhenCallFails_UntilAttemptsExhausted() {
+        when(pushGateway.sendSync(anyList())).thenThrow(new PushGatewayException("network down"));
+
+        dispatcher.dispatch(List.of(
+                new PushBatchDispatcher.PendingPush("first-try", 1),
+                new PushBatchDispatcher.PendingPush("last-try", 3)));
+
+        assertEquals(1, count("retried"));
+        assertEquals(1, count("failed"));
+    }
+
+    @Test
+    void dispatch_CountsRetryAsDroppedWhenTheSchedulerIsShutDown() {
+        when(pushGateway.sendSync(anyList())).thenThrow(new PushGatewayException("network down"));
+        when(taskScheduler.schedule(any(Runnable.class), any(Instant.class)))
+                .thenThrow(new RejectedExecutionException("shut down"));
+
+        dispatcher.dispatch(List.of(new PushBatchDispatcher.PendingPush("first-try", 1)));
+
+        assertEquals(0, count("retried"));
+        assertEquals(1, count("dropped"));
+    }
+
+    @Test
+    void stop_ShutsDownTheDispatchersOwnRetryScheduler() throws Exception {
+        when(pushGateway.sendSync(anyList())).thenThrow(new PushGatewayException("network down"));
+        dispatcher = new PushBatchDispatcher(pushGateway, circuitBreaker, pushTokenPruner,
+                meterRegistry, 500, 5, 10, 3, 60_000, 1);
+        dispatcher.start();
+        dispatcher.stop();
+
+        dispatcher.dispatch(pushes("after-shutdown"));
+
+        assertEquals(0, count("retried"));
+        assertEquals(1, count("dropped"));
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void dispatch_HandsDeadTokensToPruner() {
+        when(pushGateway.sendSync(anyList()))
+                .thenReturn(List.of(Result.DEAD_TOKEN, Result.DEAD_TOKEN, Result.DELIVERED));
+
+        dispatcher.dispatch(pushes("unregistered", "malformed", "alive"));
+
+        verify(pushTokenPruner).pruneAsync(List.of("unregistered", "malformed"));
+        assertEquals(2, count("dead_token"));
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void dispatch_FailsFastOnceCircuitIsOpen() {
+        when(pushGateway.sendSync(anyList())).thenThrow(new PushGatewayException("fcm outage"));
+        List<PushBatchDispatcher.PendingPush> batch = List.of(new PushBatchDispatcher.PendingPush("token", 3));
+
+        dispatcher.dispatch(batch);
+        dispatcher.dispatch(batch);
+        dispatcher.dispatch(batch);
+
+        assertEquals(PushCircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertEquals(1, count("rejected"));
+        verify(pushGateway, times(2)).sendSync(anyList());
+    }
+
+    @Test
+    void dispatch_RequeuesRejectedTokensOnceBreakerIsDueToHalfOpen() {
+        when(pushGateway.sendSync(anyList())).thenThrow(new PushGatewayException("fcm outage"));
+        dispatcher.dispatch(List.of(new PushBatchDispatcher.PendingPush("token", 3)));
+        dispatcher.dispatch(List.of(new PushBatchDispatcher.PendingPush("token", 3)));
+        ArgumentCaptor<Runnable> requeue = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Instant> due = ArgumentCaptor.forClass(Instant.class);
+        Instant before = Instant.now();
+
+        dispatcher.dispatch(pushes("a", "b", "a"));
+
+        verify(taskScheduler).schedule(requeue.capture(), due.capture());
+        assertTrue(due.getValue().isAfter(before.plusSeconds(25)), "re-queued when the breaker half-opens");
+        requeue.getValue().run();
+        assertEquals(2, dispatcher.pendingCount());
+        assertEquals(3, count("rejected"));
+    }
+
+    @Test
+    void worker_GroupsQueuedPushesIntoBatchesOfAtMost500() throws Exception {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger sent = new AtomicInteger();
+        when(pushGateway.sendSync(anyList())).thenAnswer(invocation -> {
+            List<String> tokens = invocation.getArgument(0);
+            batchSizes.add(tokens.size());
+            sent.addAndGet(tokens.size());
+            return Collections.nCopies(tokens.size(), Result.DELIVERED);
+        });
+
+        for (int i = 0; i < 1200; i++) {
+            assertTrue(dispatcher.enqueue("token-" + i));
+        }
+        dispatcher.start();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sent.get() < 1200 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        dispatcher.stop();
+
+        assertEquals(1200, sent.get());
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 500), "No batch may exceed the FCM limit");
+        assertEquals(3, batchSizes.size());
+    }
+
+    @Test
+    void enqueue_DropsWhenQueueIsFull() {
+        dispatcher = newDispatcher(1);
+
+        assertTrue(dispatcher.enqueue("token-1"));
+        assertFalse(dispatcher.enqueue("token-2"));
+        assertEquals(1, count("dropped"));
+        verify(pushGateway, never()).sendSync(anyList());
+    }
+}
@@ -0,0 +1,94 @@
+package com.hermnet.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PushCircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private PushCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        breaker = new PushCircuitBreaker(meterRegistry, 3, 30, clock::get);
+    }
+
+    private double gauge() {
+        return meterRegistry.get("hermnet.push.circuit.state").gauge().value();
+    }
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+
+        assertEquals(PushCircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+        assertEquals(2.0, gauge());
+    }
+
+    @Test
+    void remainingOpenMillisCountsDownTheOpenPeriod() {
+        assertEquals(0, breaker.remainingOpenMillis());
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure();
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertEquals(20_000, breaker.remainingOpenMillis());
+    }
+
+    @Test
+    void successResetsFailureStreak() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+
+        assertEquals(PushCircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0.0, gauge());
+    }
+
+    @Test
+    void halfOpenAllowsSingleTrialAfterOpenPeriod() {
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure();
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(31));
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest(), "Only one trial call while half-open");
+        assertEquals(1.0, gauge());
+
+        breaker.recordSuccess();
+        assertEquals(PushCircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void failedTrialReopensImmediately() {
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure();
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+
+        assertEquals(PushCircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+    }
+}